@@ -30,7 +30,10 @@ import androidx.annotation.NonNull;
 import org.simlar.helper.FileHelper;
 import org.simlar.helper.PreferencesHelper;
 import org.simlar.helper.Version;
+import org.simlar.https.LogUploadQueue;
 import org.simlar.logging.Lg;
+import org.simlar.logging.LogSink;
+import org.simlar.logging.Tracer;
 import org.simlar.service.ServiceActivities;
 import org.simlar.service.SimlarNotificationChannel;
 import org.simlar.service.SimlarService;
@@ -45,12 +48,25 @@ public final class App extends Application
 	public void onCreate()
 	{
 		super.onCreate();
+		final int span = Tracer.begin("App.onCreate");
 
+		final int preferencesSpan = Tracer.begin("PreferencesHelper.readPreferencesFromFile");
 		PreferencesHelper.readPreferencesFromFile(this);
 		Lg.init(PreferencesHelper.readFromFileDebugMode(this));
+		Tracer.end(preferencesSpan);
+
+		final int fileHelperSpan = Tracer.begin("FileHelper.init");
 		FileHelper.init(this);
+		Tracer.end(fileHelperSpan);
+
+		final int logSinkSpan = Tracer.begin("LogSink.init");
+		LogSink.init(FileHelper.getLogDirectoryName());
+		Tracer.end(logSinkSpan);
+
+		LogUploadQueue.process();
 		SimlarService.initActivities(new ServiceActivities(MainActivity.class, RingingActivity.class, CallActivity.class));
 		SimlarNotificationChannel.createNotificationChannels(this);
+		Tracer.end(span);
 
 		Lg.i("simlar started with versionCode=", Version.getVersionCode(this), " version=", Version.getVersionName(this),
 				" on device: ", Build.MANUFACTURER, " ", Build.MODEL, " (", Build.DEVICE, ") with android version=", Build.VERSION.RELEASE);
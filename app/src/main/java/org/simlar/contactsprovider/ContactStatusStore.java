@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.contactsprovider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.simlar.helper.ContactStatus;
+import org.simlar.helper.FileHelper;
+import org.simlar.helper.FileHelper.NotInitedException;
+import org.simlar.logging.Lg;
+import org.simlar.utils.Util;
+
+/**
+ * Remembers when the server reported the status of a contact, so that only new or expired contacts
+ * need to be requested again. All methods have to be called from the same background thread.
+ */
+final class ContactStatusStore
+{
+	static final long DEFAULT_TTL_MILLISECONDS = 12 * 60 * 60 * 1000L;
+	private static final int FORMAT_VERSION = 1;
+
+	private final File mFile; // null for the default file, which needs FileHelper
+	private final Map<String, Entry> mEntries = new HashMap<>();
+	private long mTtl = DEFAULT_TTL_MILLISECONDS;
+	private boolean mRead = false;
+	private String mMySimlarId = null;
+
+	private static final class Entry
+	{
+		final ContactStatus status;
+		final long timestamp;
+
+		Entry(final ContactStatus status, final long timestamp)
+		{
+			this.status = status;
+			this.timestamp = timestamp;
+		}
+	}
+
+	ContactStatusStore()
+	{
+		this(null);
+	}
+
+	// e.g. a temporary file in unit tests
+	ContactStatusStore(final File file)
+	{
+		mFile = file;
+	}
+
+	void setTtl(final long ttl)
+	{
+		mTtl = ttl;
+	}
+
+	// sorts the simlarIds into those with a still valid status and those which need to be requested from the server
+	void partition(final String mySimlarId, final Set<String> simlarIds, final Map<String, ContactStatus> validStatus, final Set<String> staleSimlarIds)
+	{
+		partition(mySimlarId, simlarIds, validStatus, staleSimlarIds, System.currentTimeMillis());
+	}
+
+	void partition(final String mySimlarId, final Set<String> simlarIds, final Map<String, ContactStatus> validStatus, final Set<String> staleSimlarIds,
+	               final long now)
+	{
+		ensureRead(mySimlarId);
+
+		for (final String simlarId : simlarIds) {
+			final Entry entry = mEntries.get(simlarId);
+			if (entry == null || entry.timestamp > now || now - entry.timestamp >= mTtl) {
+				staleSimlarIds.add(simlarId);
+			} else {
+				validStatus.put(simlarId, entry.status);
+			}
+		}
+
+		Lg.i("contact status store: ", validStatus.size(), " valid and ", staleSimlarIds.size(), " stale contacts");
+	}
+
+	void update(final Map<String, ContactStatus> contactsStatus)
+	{
+		update(contactsStatus, System.currentTimeMillis());
+	}
+
+	void update(final Map<String, ContactStatus> contactsStatus, final long now)
+	{
+		for (final Map.Entry<String, ContactStatus> entry : contactsStatus.entrySet()) {
+			if (entry.getValue().isValid()) {
+				mEntries.put(entry.getKey(), new Entry(entry.getValue(), now));
+			}
+		}
+	}
+
+	void invalidate()
+	{
+		Lg.i("invalidating contact status store");
+		mEntries.clear();
+	}
+
+	void reset()
+	{
+		invalidate();
+		mMySimlarId = null;
+		mRead = true;
+		final File file = getFile();
+		if (file != null && file.exists() && !file.delete()) {
+			Lg.w("deleting contact status store failed");
+		}
+	}
+
+	private void ensureRead(final String mySimlarId)
+	{
+		if (!mRead) {
+			mRead = true;
+			read(mySimlarId);
+		}
+
+		if (!Util.equalString(mMySimlarId, mySimlarId)) {
+			mEntries.clear();
+			mMySimlarId = mySimlarId;
+		}
+	}
+
+	private File getFile()
+	{
+		if (mFile != null) {
+			return mFile;
+		}
+
+		try {
+			return new File(FileHelper.getContactsStatusFileName());
+		} catch (final NotInitedException e) {
+			Lg.ex(e, "FileHelper.NotInitedException");
+			return null;
+		}
+	}
+
+	private void read(final String mySimlarId)
+	{
+		final File file = getFile();
+		if (file == null || !file.exists()) {
+			return;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FORMAT_VERSION || !Util.equalString(in.readUTF(), mySimlarId)) {
+				Lg.i("contact status store has an old format or belongs to a different account => ignoring it");
+				return;
+			}
+
+			final int size = in.readInt();
+			for (int i = 0; i < size; ++i) {
+				mEntries.put(in.readUTF(), new Entry(ContactStatus.fromInt(in.readInt()), in.readLong()));
+			}
+			mMySimlarId = mySimlarId;
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while reading contact status store");
+			mEntries.clear();
+		}
+	}
+
+	// only keeps the given simlarIds, so that contacts removed from the telephone book do not pile up
+	void retainAndWrite(final Set<String> simlarIds)
+	{
+		mEntries.keySet().retainAll(simlarIds);
+
+		final File file = getFile();
+		if (file == null || Util.isNullOrEmpty(mMySimlarId)) {
+			return;
+		}
+
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(mMySimlarId);
+			out.writeInt(mEntries.size());
+			for (final Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().status.toInt());
+				out.writeLong(entry.getValue().timestamp);
+			}
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while writing contact status store");
+			return;
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			Lg.e("failed to rename contact status store: ", tmpFile.getName());
+		}
+	}
+}
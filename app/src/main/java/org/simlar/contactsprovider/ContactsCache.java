@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.contactsprovider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.simlar.helper.ContactData;
+import org.simlar.helper.ContactStatus;
+import org.simlar.helper.FileHelper;
+import org.simlar.helper.FileHelper.NotInitedException;
+import org.simlar.logging.Lg;
+import org.simlar.utils.Util;
+
+/**
+ * Persists the last known contacts (simlarId => ContactData including status) so that the
+ * contact list can be shown immediately on a cold start while the telephone book and the
+ * server are being queried in the background.
+ */
+final class ContactsCache
+{
+	private static final int FORMAT_VERSION = 1;
+
+	private ContactsCache()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	private static File getFile()
+	{
+		try {
+			return new File(FileHelper.getContactsCacheFileName());
+		} catch (final NotInitedException e) {
+			Lg.ex(e, "FileHelper.NotInitedException");
+			return null;
+		}
+	}
+
+	public static Map<String, ContactData> read(final String mySimlarId)
+	{
+		final File file = getFile();
+		if (file == null || !file.exists()) {
+			Lg.i("no contacts cache available");
+			return null;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				Lg.i("contacts cache has an old format => ignoring it");
+				return null;
+			}
+
+			if (!Util.equalString(in.readUTF(), mySimlarId)) {
+				Lg.w("contacts cache belongs to a different account => ignoring it");
+				return null;
+			}
+
+			final int size = in.readInt();
+			final Map<String, ContactData> contacts = new HashMap<>(size);
+			for (int i = 0; i < size; ++i) {
+				final String simlarId = in.readUTF();
+				final String name = readNullableString(in);
+				final String guiTelephoneNumber = readNullableString(in);
+				final ContactStatus status = ContactStatus.fromInt(in.readInt());
+				final String photoId = readNullableString(in);
+				contacts.put(simlarId, new ContactData(name, guiTelephoneNumber, status, photoId));
+			}
+
+			Lg.i("read ", contacts.size(), " contacts from cache");
+			return contacts;
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while reading contacts cache");
+			delete();
+			return null;
+		}
+	}
+
+	public static void write(final String mySimlarId, final Map<String, ContactData> contacts)
+	{
+		final File file = getFile();
+		if (file == null) {
+			return;
+		}
+
+		// write to a temporary file first so that a crash never leaves a half written cache
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try (final FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+		     final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(mySimlarId);
+			out.writeInt(contacts.size());
+			for (final Map.Entry<String, ContactData> entry : contacts.entrySet()) {
+				final ContactData contactData = entry.getValue();
+				out.writeUTF(entry.getKey());
+				writeNullableString(out, contactData.name);
+				writeNullableString(out, contactData.guiTelephoneNumber);
+				out.writeInt(contactData.status.toInt());
+				writeNullableString(out, contactData.photoId);
+			}
+			out.flush();
+			fileOutputStream.getFD().sync();
+		} catch (final FileNotFoundException e) {
+			Lg.ex(e, "FileNotFoundException while writing contacts cache");
+			return;
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while writing contacts cache");
+			return;
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			Lg.e("failed to rename contacts cache: ", tmpFile.getName());
+			return;
+		}
+
+		Lg.i("wrote ", contacts.size(), " contacts to cache");
+	}
+
+	public static void delete()
+	{
+		final File file = getFile();
+		if (file != null && file.exists() && !file.delete()) {
+			Lg.w("deleting contacts cache failed");
+		}
+	}
+
+	static String readNullableString(final DataInputStream in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static void writeNullableString(final DataOutputStream out, final String string) throws IOException
+	{
+		out.writeBoolean(string != null);
+		if (string != null) {
+			out.writeUTF(string);
+		}
+	}
+}
@@ -20,15 +20,12 @@
 
 package org.simlar.contactsprovider;
 
-import android.content.ContentUris;
 import android.content.Context;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
-import android.provider.ContactsContract;
 import android.provider.MediaStore;
 
 import java.io.FileNotFoundException;
@@ -38,8 +35,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 import org.simlar.helper.ContactData;
 import org.simlar.helper.ContactDataComplete;
@@ -48,9 +44,10 @@ import org.simlar.helper.FileHelper;
 import org.simlar.helper.FileHelper.NotInitedException;
 import org.simlar.helper.PermissionsHelper;
 import org.simlar.helper.PreferencesHelper;
-import org.simlar.helper.SimlarNumber;
 import org.simlar.https.GetContactsStatus;
+import org.simlar.https.SimlarErrorException;
 import org.simlar.logging.Lg;
+import org.simlar.utils.Scheduler;
 import org.simlar.utils.Util;
 
 public final class ContactsProvider
@@ -97,8 +94,15 @@ public final class ContactsProvider
 		boolean mFakeData = false;
 		private final Set<FullContactsListener> mFullContactsListeners = new HashSet<>();
 		private final Map<ContactListener, String> mContactListener = new HashMap<>();
-		private final ExecutorService mExecutorService = Executors.newSingleThreadExecutor();
+		// phone book queries, caches and the status store, number parsing is spread to the cpu pool by PhoneBookSync
+		private final Executor mExecutorService = Scheduler.createSerialExecutor(Scheduler.Pool.DISK, Scheduler.Priority.USER_INTERACTIVE);
+		// only the status requests to the server
+		private final Executor mNetworkExecutorService = Scheduler.createSerialExecutor(Scheduler.Pool.NETWORK, Scheduler.Priority.USER_INTERACTIVE);
 		private final Handler mMainLoopHandler = new Handler(Looper.getMainLooper());
+		private Set<ContactDataComplete> mReportedContacts = null;
+		private boolean mShowingCachedContacts = false;
+		private final PhoneBookSync mPhoneBookSync = new PhoneBookSync();
+		private final ContactStatusStore mContactStatusStore = new ContactStatusStore();
 
 		private enum State
 		{
@@ -127,10 +131,19 @@ public final class ContactsProvider
 			}
 
 			mState = State.PARSING_PHONES_ADDRESS_BOOK;
+			mReportedContacts = null;
+			mShowingCachedContacts = false;
 			mExecutorService.execute(() -> {
+				if (!mFakeData) {
+					final Map<String, ContactData> cachedContacts = ContactsCache.read(mySimlarId);
+					if (cachedContacts != null && !cachedContacts.isEmpty()) {
+						mMainLoopHandler.post(() -> onContactsLoadedFromCache(cachedContacts));
+					}
+				}
+
 				final Map<String, ContactData> contacts = mFakeData
 						? createFakeData()
-						: loadContactsFromTelephoneBook(context, mySimlarId);
+						: mPhoneBookSync.sync(context, mySimlarId);
 
 				mMainLoopHandler.post(() -> onContactsLoadedFromTelephoneBook(contacts));
 			});
@@ -143,6 +156,14 @@ public final class ContactsProvider
 				mContacts.clear();
 			}
 
+			if (error == Error.WRONG_CREDENTIALS || error == Error.PERMISSION_DENIED) {
+				mExecutorService.execute(() -> {
+					ContactsCache.delete();
+					mPhoneBookSync.reset();
+					mContactStatusStore.reset();
+				});
+			}
+
 			notifyContactListeners();
 			notifyFullContactsListeners(null, error);
 		}
@@ -158,12 +179,81 @@ public final class ContactsProvider
 
 		private void notifyFullContactsListeners(final Set<ContactDataComplete> contacts, final Error error)
 		{
+			final Set<ContactDataComplete> reportedContacts = mReportedContacts;
+			final boolean showingCachedContacts = mShowingCachedContacts;
+			mReportedContacts = null;
+			mShowingCachedContacts = false;
+			if (reportedContacts != null) {
+				// the listeners already show the reported contacts, so only report a difference
+				if (error == Error.NONE && equalContacts(reportedContacts, contacts)) {
+					Lg.i("contacts unchanged compared to the already reported ones");
+					mFullContactsListeners.clear();
+					return;
+				}
+
+				if (error == Error.NO_INTERNET_CONNECTION && showingCachedContacts) {
+					Lg.w("server not reachable => keep showing cached contacts");
+					mFullContactsListeners.clear();
+					return;
+				}
+			}
+
 			for (final FullContactsListener listener : mFullContactsListeners) {
 				listener.onGetContacts(contacts, error);
 			}
 			mFullContactsListeners.clear();
 		}
 
+		void onContactsLoadedFromCache(final Map<String, ContactData> contacts)
+		{
+			if (mState != State.PARSING_PHONES_ADDRESS_BOOK) {
+				Lg.w("contacts cache loaded in state=", mState, " => ignoring it");
+				return;
+			}
+
+			mContacts.clear();
+			mContacts.putAll(contacts);
+			notifyContactListeners();
+
+			Lg.i("showing cached contacts while reconciling with telephone book and server");
+			mShowingCachedContacts = true;
+			reportIntermediateContacts();
+		}
+
+		private void reportIntermediateContacts()
+		{
+			// listeners stay registered to receive the final contacts later on
+			mReportedContacts = createFullContactDataSet();
+			for (final FullContactsListener listener : mFullContactsListeners) {
+				listener.onGetContacts(mReportedContacts, Error.NONE);
+			}
+		}
+
+		private static boolean equalContacts(final Set<ContactDataComplete> lhs, final Set<ContactDataComplete> rhs)
+		{
+			if (lhs == null || rhs == null || lhs.size() != rhs.size()) {
+				return false;
+			}
+
+			final Map<String, ContactDataComplete> lhsMap = new HashMap<>();
+			for (final ContactDataComplete contact : lhs) {
+				lhsMap.put(contact.simlarId, contact);
+			}
+
+			for (final ContactDataComplete contact : rhs) {
+				final ContactDataComplete other = lhsMap.get(contact.simlarId);
+				if (other == null
+						|| !Util.equals(contact.name, other.name)
+						|| !Util.equals(contact.guiTelephoneNumber, other.guiTelephoneNumber)
+						|| contact.status != other.status
+						|| !Util.equals(contact.photoId, other.photoId)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
 		void onContactsLoadedFromTelephoneBook(final Map<String, ContactData> contacts)
 		{
 			if (contacts == null) {
@@ -178,20 +268,56 @@ public final class ContactsProvider
 
 			notifyContactListeners();
 
+			final Set<String> simlarIds = new HashSet<>(mContacts.keySet());
+			final String mySimlarId = PreferencesHelper.getMySimlarIdOrEmptyString();
+			final boolean useStatusStore = !mFakeData;
 			mExecutorService.execute(() -> {
-				try {
-					final Map<String, ContactStatus> contactsStatus = GetContactsStatus.httpPostGetContactsStatus(mContacts.keySet());
-					mMainLoopHandler.post(() -> onContactsStatusRequestedFromServer(contactsStatus));
-				} catch (final GetContactsStatus.SimlarErrorException e) {
-					if (e.getId() == GetContactsStatus.SimlarErrorException.WRONG_CREDENTIALS_ID) {
-						mMainLoopHandler.post(() -> onError(Error.WRONG_CREDENTIALS));
-					} else {
-						mMainLoopHandler.post(() -> onError(Error.NO_INTERNET_CONNECTION));
-					}
+				// only ask the server for contacts whose status is unknown or expired
+				final Map<String, ContactStatus> validStatus = new HashMap<>();
+				final Set<String> staleSimlarIds = new HashSet<>();
+				if (useStatusStore) {
+					mContactStatusStore.partition(mySimlarId, simlarIds, validStatus, staleSimlarIds);
+				} else {
+					staleSimlarIds.addAll(simlarIds);
+				}
+
+				if (!validStatus.isEmpty()) {
+					mMainLoopHandler.post(() -> onContactsStatusChunkReceived(validStatus));
 				}
+
+				mNetworkExecutorService.execute(() -> requestContactsStatus(simlarIds, staleSimlarIds, validStatus, useStatusStore));
 			});
 		}
 
+		// runs on the network executor, the status store is only accessed on mExecutorService
+		private void requestContactsStatus(final Set<String> simlarIds, final Set<String> staleSimlarIds, final Map<String, ContactStatus> validStatus,
+		                                   final boolean useStatusStore)
+		{
+			try {
+				final Map<String, ContactStatus> contactsStatus = GetContactsStatus.httpPostGetContactsStatus(staleSimlarIds, chunk -> {
+					if (useStatusStore) {
+						mExecutorService.execute(() -> mContactStatusStore.update(chunk));
+					}
+					mMainLoopHandler.post(() -> onContactsStatusChunkReceived(chunk));
+				});
+
+				if (useStatusStore) {
+					mExecutorService.execute(() -> mContactStatusStore.retainAndWrite(simlarIds));
+				}
+
+				if (contactsStatus != null) {
+					contactsStatus.putAll(validStatus);
+				}
+				mMainLoopHandler.post(() -> onContactsStatusRequestedFromServer(contactsStatus));
+			} catch (final SimlarErrorException e) {
+				if (e.getId() == SimlarErrorException.WRONG_CREDENTIALS_ID) {
+					mMainLoopHandler.post(() -> onError(Error.WRONG_CREDENTIALS));
+				} else {
+					mMainLoopHandler.post(() -> onError(Error.NO_INTERNET_CONNECTION));
+				}
+			}
+		}
+
 		private ContactData createContactData(final String simlarId)
 		{
 			final ContactData cd = mContacts.get(simlarId);
@@ -211,16 +337,48 @@ public final class ContactsProvider
 			return cd;
 		}
 
+		void onContactsStatusChunkReceived(final Map<String, ContactStatus> contactsStatus)
+		{
+			if (mState != State.REQUESTING_CONTACTS_STATUS_FROM_SERVER) {
+				Lg.w("contacts status chunk received in state=", mState, " => ignoring it");
+				return;
+			}
+
+			updateContactStatus(contactsStatus);
+
+			// while cached contacts are shown, partial results would make the list shrink
+			if (!mShowingCachedContacts && !mFullContactsListeners.isEmpty()) {
+				reportIntermediateContacts();
+			}
+		}
+
 		void onContactsStatusRequestedFromServer(final Map<String, ContactStatus> contactsStatus)
 		{
 			if (updateContactStatus(contactsStatus)) {
 				mState = State.INITIALIZED;
+				saveContactsCache();
 				notifyFullContactsListeners(createFullContactDataSet(), Error.NONE);
 			} else {
 				onError(Error.NO_INTERNET_CONNECTION);
 			}
 		}
 
+		private void saveContactsCache()
+		{
+			if (mFakeData) {
+				return;
+			}
+
+			final String mySimlarId = PreferencesHelper.getMySimlarIdOrEmptyString();
+			final Map<String, ContactData> contacts = new HashMap<>();
+			for (final Map.Entry<String, ContactData> entry : mContacts.entrySet()) {
+				final ContactData cd = entry.getValue();
+				contacts.put(entry.getKey(), new ContactData(cd.name, cd.guiTelephoneNumber, cd.status, cd.photoId));
+			}
+
+			mExecutorService.execute(() -> ContactsCache.write(mySimlarId, contacts));
+		}
+
 		private Set<ContactDataComplete> createFullContactDataSet()
 		{
 			final Set<ContactDataComplete> registeredContacts = new HashSet<>();
@@ -262,66 +420,6 @@ public final class ContactsProvider
 			return result;
 		}
 
-		static Map<String, ContactData> loadContactsFromTelephoneBook(final Context context, final String mySimlarId)
-		{
-			Lg.i("loading contacts from telephone book");
-			final Map<String, ContactData> result = new HashMap<>();
-
-			final String[] projection = {
-					ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
-					ContactsContract.CommonDataKinds.Phone.NUMBER,
-					ContactsContract.CommonDataKinds.Phone.SORT_KEY_PRIMARY,
-					ContactsContract.CommonDataKinds.Phone.PHOTO_ID
-			};
-
-			final Cursor contacts = context.getContentResolver().query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, projection, null, null,
-					null);
-
-			if (contacts == null) {
-				Lg.e("contacts cursor null");
-				return result;
-			}
-
-			while (contacts.moveToNext()) {
-				final long contactId = contacts.getLong(0);
-				final String number = contacts.getString(1);
-				final String name = contacts.getString(2);
-				final boolean hasPhotoId = contacts.getLong(3) != 0;
-
-				if (Util.isNullOrEmpty(number)) {
-					continue;
-				}
-
-				final SimlarNumber simlarNumber = new SimlarNumber(number);
-				final String simlarId = simlarNumber.getSimlarId();
-				if (Util.isNullOrEmpty(simlarId)) {
-					continue;
-				}
-
-				if (Util.equalString(simlarId, mySimlarId)) {
-					continue;
-				}
-
-				final String photoUri = hasPhotoId
-						? Uri.withAppendedPath(ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId), ContactsContract.Contacts.Photo.CONTENT_DIRECTORY).toString()
-						: null;
-
-				final ContactData contactData = result.get(simlarId);
-				if (contactData == null || Util.isNullOrEmpty(contactData.name)) {
-					result.put(simlarId, new ContactData(Util.equalString(name, number) ? "" : name,
-							simlarNumber.getGuiTelephoneNumber(), ContactStatus.UNKNOWN, photoUri));
-
-					/// ATTENTION this logs the users telephone book
-					// Lg.d("adding contact " + name + " " + number + " => " + simlarId);
-				}
-			}
-			contacts.close();
-
-			Lg.i("found ", result.size(), " contacts from telephone book");
-
-			return result;
-		}
-
 		private boolean updateContactStatus(final Map<String, ContactStatus> statusMap)
 		{
 			if (statusMap == null) {
@@ -398,7 +496,13 @@ public final class ContactsProvider
 					Lg.i("using cached data for all contacts");
 					listener.onGetContacts(createFullContactDataSet(), Error.NONE);
 				}
-				case PARSING_PHONES_ADDRESS_BOOK, REQUESTING_CONTACTS_STATUS_FROM_SERVER -> mFullContactsListeners.add(listener);
+				case PARSING_PHONES_ADDRESS_BOOK, REQUESTING_CONTACTS_STATUS_FROM_SERVER -> {
+					if (mReportedContacts != null) {
+						Lg.i("using already reported data for all contacts");
+						listener.onGetContacts(mReportedContacts, Error.NONE);
+					}
+					mFullContactsListeners.add(listener);
+				}
 				case UNINITIALIZED, ERROR -> {
 					mFullContactsListeners.add(listener);
 					loadContacts(context);
@@ -461,6 +565,10 @@ public final class ContactsProvider
 
 			mState = State.UNINITIALIZED;
 			mContacts.clear();
+			mExecutorService.execute(() -> {
+				mPhoneBookSync.reset();
+				mContactStatusStore.invalidate();
+			});
 			return true;
 		}
 	}
@@ -529,7 +637,7 @@ public final class ContactsProvider
 			return;
 		}
 
-		Executors.newSingleThreadExecutor().execute(() -> {
+		Scheduler.execute(Scheduler.Pool.NETWORK, Scheduler.Priority.USER_INTERACTIVE, () -> {
 			try {
 				final Map<String, ContactStatus> contactsStatus = GetContactsStatus.httpPostGetContactsStatus(Collections.singleton(simlarId));
 				new Handler(Looper.getMainLooper()).post(() -> {
@@ -539,9 +647,9 @@ public final class ContactsProvider
 						listener.onGetStatus(contactsStatus.get(simlarId) == ContactStatus.REGISTERED);
 					}
 				});
-			} catch (final GetContactsStatus.SimlarErrorException e) {
+			} catch (final SimlarErrorException e) {
 				new Handler(Looper.getMainLooper()).post(() -> {
-					if (e.getId() == GetContactsStatus.SimlarErrorException.WRONG_CREDENTIALS_ID) {
+					if (e.getId() == SimlarErrorException.WRONG_CREDENTIALS_ID) {
 						listener.wrongCredentials();
 					} else {
 						listener.onOffline();
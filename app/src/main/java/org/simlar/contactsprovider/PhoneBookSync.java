@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.contactsprovider;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.simlar.helper.ContactData;
+import org.simlar.helper.ContactStatus;
+import org.simlar.helper.FileHelper;
+import org.simlar.helper.FileHelper.NotInitedException;
+import org.simlar.helper.SimlarNumber;
+import org.simlar.helper.SimlarNumberCache;
+import org.simlar.logging.Lg;
+import org.simlar.utils.Scheduler;
+import org.simlar.utils.Util;
+
+/**
+ * Keeps the parsed phone numbers of the telephone book per contact, so that a reload only needs to
+ * process contacts changed or deleted since the last sync point. All methods have to be called from
+ * the same background thread.
+ */
+final class PhoneBookSync
+{
+	private static final int FORMAT_VERSION = 2;
+	private static final long NO_SYNC_TIMESTAMP = -1;
+	private static final long LAST_SYNC_PERSIST_INTERVAL_MILLISECONDS = 24 * 60 * 60 * 1000;
+	private static final int BATCH_SIZE = 256;
+
+	private static final String[] PHONE_PROJECTION = {
+			ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+			ContactsContract.CommonDataKinds.Phone.NUMBER,
+			ContactsContract.CommonDataKinds.Phone.SORT_KEY_PRIMARY,
+			ContactsContract.CommonDataKinds.Phone.PHOTO_ID,
+			ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP
+	};
+
+	private boolean mSnapshotRead = false;
+	private String mMySimlarId = null;
+	private int mRegion = 0;
+	private long mSyncTimestamp = NO_SYNC_TIMESTAMP; // highest last updated timestamp of the telephone book, used as watermark for queries
+	private long mLastSyncTime = NO_SYNC_TIMESTAMP; // wall clock time of the last successful sync
+	private final Map<Long, List<PhoneEntry>> mPhones = new LinkedHashMap<>();
+
+	static final class PhoneEntry
+	{
+		final String simlarId;
+		final String name;
+		final String guiTelephoneNumber;
+		final boolean hasPhoto;
+
+		PhoneEntry(final String simlarId, final String name, final String guiTelephoneNumber, final boolean hasPhoto)
+		{
+			this.simlarId = simlarId;
+			this.name = name;
+			this.guiTelephoneNumber = guiTelephoneNumber;
+			this.hasPhoto = hasPhoto;
+		}
+	}
+
+	private static final class PhoneRowBatch
+	{
+		final long[] contactIds = new long[BATCH_SIZE];
+		final String[] numbers = new String[BATCH_SIZE];
+		final String[] names = new String[BATCH_SIZE];
+		final boolean[] hasPhotos = new boolean[BATCH_SIZE];
+		final SimlarNumberCache.Normalized[] normalized = new SimlarNumberCache.Normalized[BATCH_SIZE];
+		int size = 0;
+
+		void add(final long contactId, final String number, final String name, final boolean hasPhoto)
+		{
+			contactIds[size] = contactId;
+			numbers[size] = number;
+			names[size] = name;
+			hasPhotos[size] = hasPhoto;
+			++size;
+		}
+
+		boolean isFull()
+		{
+			return size == BATCH_SIZE;
+		}
+
+		void normalize()
+		{
+			for (int i = 0; i < size; ++i) {
+				if (!Util.isNullOrEmpty(numbers[i])) {
+					normalized[i] = SimlarNumberCache.normalize(numbers[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects phone rows into batches. With parallel parsing, the cpu pool normalizes the numbers of
+	 * full batches while further rows are added.
+	 */
+	static final class PhoneRowParser
+	{
+		private final boolean mParallel;
+		private final List<PhoneRowBatch> mBatches = new ArrayList<>();
+		private final List<Future<?>> mFutures = new ArrayList<>();
+		private PhoneRowBatch mBatch = new PhoneRowBatch();
+		private int mCount = 0;
+
+		PhoneRowParser(final boolean parallel)
+		{
+			mParallel = parallel;
+		}
+
+		void add(final long contactId, final String number, final String name, final boolean hasPhoto)
+		{
+			mBatch.add(contactId, number, name, hasPhoto);
+			++mCount;
+
+			if (mBatch.isFull()) {
+				submit(mBatch);
+				mBatch = new PhoneRowBatch();
+			}
+		}
+
+		private void submit(final PhoneRowBatch batch)
+		{
+			mBatches.add(batch);
+			if (mParallel) {
+				mFutures.add(Scheduler.submit(Scheduler.Pool.CPU, Scheduler.Priority.USER_INTERACTIVE, batch::normalize));
+			} else {
+				batch.normalize();
+				mFutures.add(null);
+			}
+		}
+
+		// waits for all batches and adds their phones in row order to phones
+		void finish(final String mySimlarId, final Map<Long, List<PhoneEntry>> phones)
+		{
+			if (mBatch.size > 0) {
+				submit(mBatch);
+				mBatch = new PhoneRowBatch();
+			}
+
+			boolean interrupted = false;
+			for (int i = 0; i < mFutures.size(); ++i) {
+				final Future<?> future = mFutures.get(i);
+				if (future != null) {
+					interrupted |= await(mBatches.get(i), future);
+				}
+			}
+
+			// merging in row order keeps the result identical to parsing sequentially
+			for (final PhoneRowBatch batch : mBatches) {
+				for (int i = 0; i < batch.size; ++i) {
+					final SimlarNumberCache.Normalized simlarNumber = batch.normalized[i];
+					if (simlarNumber == null) {
+						continue;
+					}
+
+					final String simlarId = simlarNumber.simlarId;
+					if (Util.isNullOrEmpty(simlarId)) {
+						continue;
+					}
+
+					if (Util.equalString(simlarId, mySimlarId)) {
+						continue;
+					}
+
+					List<PhoneEntry> entries = phones.get(batch.contactIds[i]);
+					if (entries == null) {
+						entries = new ArrayList<>();
+						phones.put(batch.contactIds[i], entries);
+					}
+					entries.add(new PhoneEntry(simlarId, Util.equalString(batch.names[i], batch.numbers[i]) ? "" : batch.names[i],
+							simlarNumber.guiTelephoneNumber, batch.hasPhotos[i]));
+
+					/// ATTENTION this logs the users telephone book
+					// Lg.d("adding contact " + name + " " + number + " => " + simlarId);
+				}
+			}
+
+			Lg.i("processed ", mCount, " phone rows from telephone book in ", mBatches.size(), " batches");
+
+			if (interrupted) {
+				// the batches are complete anyway, the caller decides about the interruption
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// waits even if interrupted, so that the result does not depend on an interruption, returns true if interrupted
+		private static boolean await(final PhoneRowBatch batch, final Future<?> future)
+		{
+			boolean interrupted = false;
+			while (true) {
+				try {
+					future.get();
+					return interrupted;
+				} catch (final InterruptedException e) {
+					interrupted = true;
+					if (future.cancel(false)) {
+						// not started, yet
+						batch.normalize();
+						return true;
+					}
+				} catch (final ExecutionException e) {
+					Lg.ex(e, "parallel parsing of phone numbers failed => parsing batch sequentially");
+					batch.normalize();
+					return interrupted;
+				}
+			}
+		}
+	}
+
+	void reset()
+	{
+		Lg.i("resetting phone book snapshot");
+		clear();
+		mSnapshotRead = true;
+		deleteSnapshot();
+	}
+
+	private void clear()
+	{
+		mMySimlarId = null;
+		mRegion = 0;
+		mSyncTimestamp = NO_SYNC_TIMESTAMP;
+		mLastSyncTime = NO_SYNC_TIMESTAMP;
+		mPhones.clear();
+	}
+
+	Map<String, ContactData> sync(final Context context, final String mySimlarId)
+	{
+		if (!mSnapshotRead) {
+			mSnapshotRead = true;
+			readSnapshot();
+			SimlarNumberCache.readFromFile();
+		}
+
+		if (!needsFullSync(mySimlarId) && syncIncremental(context)) {
+			return createContacts(mPhones);
+		}
+
+		syncFull(context, mySimlarId);
+		return createContacts(mPhones);
+	}
+
+	private boolean needsFullSync(final String mySimlarId)
+	{
+		if (mSyncTimestamp == NO_SYNC_TIMESTAMP) {
+			Lg.i("no phone book snapshot available");
+			return true;
+		}
+
+		if (!Util.equalString(mMySimlarId, mySimlarId) || mRegion != SimlarNumber.getDefaultRegion()) {
+			Lg.i("phone book snapshot was created for a different account or region");
+			return true;
+		}
+
+		// deleted contacts are only kept for a limited time, so the last sync must not be older
+		if (mLastSyncTime == NO_SYNC_TIMESTAMP || System.currentTimeMillis() - mLastSyncTime >= ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS) {
+			Lg.i("last phone book sync too long ago");
+			return true;
+		}
+
+		return false;
+	}
+
+	private void syncFull(final Context context, final String mySimlarId)
+	{
+		Lg.i("loading contacts from telephone book");
+		clear();
+
+		final long syncTimestamp = readPhones(context, null, null, mySimlarId, mPhones);
+		if (syncTimestamp == NO_SYNC_TIMESTAMP) {
+			mPhones.clear();
+			deleteSnapshot();
+			return;
+		}
+
+		mMySimlarId = mySimlarId;
+		mRegion = SimlarNumber.getDefaultRegion();
+		mSyncTimestamp = syncTimestamp;
+		mLastSyncTime = System.currentTimeMillis();
+		writeSnapshot();
+	}
+
+	private boolean syncIncremental(final Context context)
+	{
+		final String[] selectionArgs = { Long.toString(mSyncTimestamp) };
+
+		final Set<Long> deletedContactIds = new HashSet<>();
+		final long deletedTimestamp = readContactIds(context, ContactsContract.DeletedContacts.CONTENT_URI,
+				ContactsContract.DeletedContacts.CONTACT_ID, ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP,
+				selectionArgs, deletedContactIds);
+		if (deletedTimestamp == NO_SYNC_TIMESTAMP) {
+			return false;
+		}
+
+		// contacts whose phone numbers have all been removed do not show up in the phone query
+		final Set<Long> updatedContactIds = new HashSet<>();
+		final long updatedTimestamp = readContactIds(context, ContactsContract.Contacts.CONTENT_URI,
+				ContactsContract.Contacts._ID, ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP,
+				selectionArgs, updatedContactIds);
+		if (updatedTimestamp == NO_SYNC_TIMESTAMP) {
+			return false;
+		}
+
+		if (deletedContactIds.isEmpty() && updatedContactIds.isEmpty()) {
+			Lg.i("telephone book unchanged since last sync");
+			// the snapshot only needs the time of the last sync with a precision far below the retention of deleted contacts
+			final long now = System.currentTimeMillis();
+			final boolean persist = now - mLastSyncTime >= LAST_SYNC_PERSIST_INTERVAL_MILLISECONDS;
+			mLastSyncTime = now;
+			if (persist) {
+				writeSnapshot();
+			}
+			return true;
+		}
+
+		final Map<Long, List<PhoneEntry>> updatedPhones = new LinkedHashMap<>();
+		final long phonesTimestamp = readPhones(context,
+				ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?", selectionArgs, mMySimlarId, updatedPhones);
+		if (phonesTimestamp == NO_SYNC_TIMESTAMP) {
+			clear();
+			return false;
+		}
+
+		applyChanges(mPhones, deletedContactIds, updatedContactIds, updatedPhones);
+
+		Lg.i("incremental telephone book sync: ", updatedContactIds.size(), " updated and ", deletedContactIds.size(), " deleted contacts");
+		mSyncTimestamp = Math.max(mSyncTimestamp, Math.max(deletedTimestamp, Math.max(updatedTimestamp, phonesTimestamp)));
+		mLastSyncTime = System.currentTimeMillis();
+		writeSnapshot();
+		return true;
+	}
+
+	private static long readContactIds(final Context context, final Uri uri, final String idColumn, final String timestampColumn,
+	                                   final String[] selectionArgs, final Set<Long> contactIds)
+	{
+		final Cursor cursor = context.getContentResolver().query(uri, new String[] { idColumn, timestampColumn },
+				timestampColumn + " > ?", selectionArgs, null);
+
+		if (cursor == null) {
+			Lg.e("cursor null for: ", uri);
+			return NO_SYNC_TIMESTAMP;
+		}
+
+		long maxTimestamp = 0;
+		while (cursor.moveToNext()) {
+			contactIds.add(cursor.getLong(0));
+			maxTimestamp = Math.max(maxTimestamp, cursor.getLong(1));
+		}
+		cursor.close();
+
+		return maxTimestamp;
+	}
+
+	private long readPhones(final Context context, final String selection, final String[] selectionArgs, final String mySimlarId,
+	                        final Map<Long, List<PhoneEntry>> phones)
+	{
+		final Cursor contacts = context.getContentResolver().query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, PHONE_PROJECTION,
+				selection, selectionArgs, null);
+
+		if (contacts == null) {
+			Lg.e("contacts cursor null");
+			return NO_SYNC_TIMESTAMP;
+		}
+
+		// drain the cursor into batches while the cpu pool normalizes the numbers of full batches
+		final PhoneRowParser parser = new PhoneRowParser(Scheduler.Pool.CPU.getThreads() > 1);
+		long maxTimestamp = 0;
+		while (contacts.moveToNext()) {
+			parser.add(contacts.getLong(0), contacts.getString(1), contacts.getString(2), contacts.getLong(3) != 0);
+			maxTimestamp = Math.max(maxTimestamp, contacts.getLong(4));
+		}
+		contacts.close();
+
+		parser.finish(mySimlarId, phones);
+		return maxTimestamp;
+	}
+
+	// removes deleted and updated contacts from phones and adds the phones of the updated ones
+	static void applyChanges(final Map<Long, List<PhoneEntry>> phones, final Set<Long> deletedContactIds, final Set<Long> updatedContactIds,
+	                         final Map<Long, List<PhoneEntry>> updatedPhones)
+	{
+		for (final Long contactId : deletedContactIds) {
+			phones.remove(contactId);
+		}
+		for (final Long contactId : updatedContactIds) {
+			phones.remove(contactId);
+		}
+
+		for (final Map.Entry<Long, List<PhoneEntry>> contact : updatedPhones.entrySet()) {
+			phones.remove(contact.getKey());
+			phones.put(contact.getKey(), contact.getValue());
+		}
+	}
+
+	/**
+	 * If several contacts share a simlarId, the one with the lowest contact id and a name wins. So the
+	 * result does not depend on the order of phones, which changes with incremental syncs.
+	 */
+	static Map<String, ContactData> createContacts(final Map<Long, List<PhoneEntry>> phones)
+	{
+		final Map<String, ContactData> result = new HashMap<>();
+		final Map<String, Long> resultContactIds = new HashMap<>();
+
+		for (final Map.Entry<Long, List<PhoneEntry>> contact : phones.entrySet()) {
+			final long contactId = contact.getKey();
+			for (final PhoneEntry entry : contact.getValue()) {
+				final ContactData contactData = result.get(entry.simlarId);
+				if (contactData != null) {
+					final boolean hasName = !Util.isNullOrEmpty(contactData.name);
+					final boolean entryHasName = !Util.isNullOrEmpty(entry.name);
+					if ((hasName && !entryHasName) || (hasName == entryHasName && resultContactIds.get(entry.simlarId) <= contactId)) {
+						continue;
+					}
+				}
+
+				final String photoUri = entry.hasPhoto
+						? Uri.withAppendedPath(ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, contactId),
+						ContactsContract.Contacts.Photo.CONTENT_DIRECTORY).toString()
+						: null;
+				result.put(entry.simlarId, new ContactData(entry.name, entry.guiTelephoneNumber, ContactStatus.UNKNOWN, photoUri));
+				resultContactIds.put(entry.simlarId, contactId);
+			}
+		}
+
+		Lg.i("found ", result.size(), " contacts from telephone book");
+		return result;
+	}
+
+	private static File getSnapshotFile()
+	{
+		try {
+			return new File(FileHelper.getPhoneBookSnapshotFileName());
+		} catch (final NotInitedException e) {
+			Lg.ex(e, "FileHelper.NotInitedException");
+			return null;
+		}
+	}
+
+	private void readSnapshot()
+	{
+		final File file = getSnapshotFile();
+		if (file == null || !file.exists()) {
+			return;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				Lg.i("phone book snapshot has an old format => ignoring it");
+				return;
+			}
+
+			final String mySimlarId = in.readUTF();
+			final int region = in.readInt();
+			final long syncTimestamp = in.readLong();
+			final long lastSyncTime = in.readLong();
+			final int contactsCount = in.readInt();
+			for (int i = 0; i < contactsCount; ++i) {
+				final long contactId = in.readLong();
+				final int entriesCount = in.readInt();
+				final List<PhoneEntry> entries = new ArrayList<>(entriesCount);
+				for (int j = 0; j < entriesCount; ++j) {
+					entries.add(new PhoneEntry(in.readUTF(), ContactsCache.readNullableString(in), in.readUTF(), in.readBoolean()));
+				}
+				mPhones.put(contactId, entries);
+			}
+
+			mMySimlarId = mySimlarId;
+			mRegion = region;
+			mSyncTimestamp = syncTimestamp;
+			mLastSyncTime = lastSyncTime;
+			Lg.i("read phone book snapshot with ", mPhones.size(), " contacts");
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while reading phone book snapshot");
+			clear();
+		}
+	}
+
+	private void writeSnapshot()
+	{
+		final File file = getSnapshotFile();
+		if (file == null) {
+			return;
+		}
+
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(mMySimlarId);
+			out.writeInt(mRegion);
+			out.writeLong(mSyncTimestamp);
+			out.writeLong(mLastSyncTime);
+			out.writeInt(mPhones.size());
+			for (final Map.Entry<Long, List<PhoneEntry>> contact : mPhones.entrySet()) {
+				out.writeLong(contact.getKey());
+				out.writeInt(contact.getValue().size());
+				for (final PhoneEntry entry : contact.getValue()) {
+					out.writeUTF(entry.simlarId);
+					ContactsCache.writeNullableString(out, entry.name);
+					out.writeUTF(entry.guiTelephoneNumber);
+					out.writeBoolean(entry.hasPhoto);
+				}
+			}
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while writing phone book snapshot");
+			return;
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			Lg.e("failed to rename phone book snapshot: ", tmpFile.getName());
+		}
+
+		SimlarNumberCache.writeToFile();
+	}
+
+	private static void deleteSnapshot()
+	{
+		final File file = getSnapshotFile();
+		if (file != null && file.exists() && !file.delete()) {
+			Lg.w("deleting phone book snapshot failed");
+		}
+	}
+}
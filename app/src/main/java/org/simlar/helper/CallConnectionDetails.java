@@ -30,6 +30,8 @@ public final class CallConnectionDetails
 {
 	private static final DecimalFormat GUI_VALUE = new DecimalFormat("#0.0");
 
+	private static volatile Thresholds mThresholds = Thresholds.DEFAULT;
+
 	private NetworkQuality mQuality = NetworkQuality.UNKNOWN;
 	private String mCodec = null;
 	private String mIceState = null;
@@ -42,12 +44,72 @@ public final class CallConnectionDetails
 	private boolean mEndedCall = false;
 	private String mEncryptionDescription = null;
 
+	// A metric only counts as changed if it differs from the last reported value by more than its absolute
+	// and its relative dead-band. Comparing against the reported value avoids toggling around a threshold.
+	public static final class Thresholds
+	{
+		public static final Thresholds DEFAULT = new Thresholds(2, 0.1f, 5, 0.2f, 5, 10, 20, 0.1f);
+		public static final Thresholds NONE = new Thresholds(0, 0, 0, 0, 0, 0, 0, 0);
+
+		final int bandwidth;
+		final float bandwidthRelative;
+		final int jitter;
+		final float jitterRelative;
+		final int packetLoss;
+		final long latePackets;
+		final int roundTripDelay;
+		final float roundTripDelayRelative;
+
+		public Thresholds(final int bandwidth, final float bandwidthRelative, final int jitter, final float jitterRelative, final int packetLoss,
+		                  final long latePackets, final int roundTripDelay, final float roundTripDelayRelative)
+		{
+			this.bandwidth = bandwidth;
+			this.bandwidthRelative = bandwidthRelative;
+			this.jitter = jitter;
+			this.jitterRelative = jitterRelative;
+			this.packetLoss = packetLoss;
+			this.latePackets = latePackets;
+			this.roundTripDelay = roundTripDelay;
+			this.roundTripDelayRelative = roundTripDelayRelative;
+		}
+	}
+
+	public static void setThresholds(final Thresholds thresholds)
+	{
+		mThresholds = thresholds == null ? Thresholds.DEFAULT : thresholds;
+	}
+
+	public CallConnectionDetails()
+	{
+	}
+
+	public CallConnectionDetails(final CallConnectionDetails other)
+	{
+		mQuality = other.mQuality;
+		mCodec = other.mCodec;
+		mIceState = other.mIceState;
+		mUpload = other.mUpload;
+		mDownload = other.mDownload;
+		mJitter = other.mJitter;
+		mPacketLoss = other.mPacketLoss;
+		mLatePackets = other.mLatePackets;
+		mRoundTripDelay = other.mRoundTripDelay;
+		mEndedCall = other.mEndedCall;
+		mEncryptionDescription = other.mEncryptionDescription;
+	}
+
 	public boolean updateCallStats(final NetworkQuality quality, final String codec, final String iceState, final int upload, final int download,
 	                               final int jitter, final int packetLoss, final long latePackets, final int roundTripDelay, final String encryptionDescription)
 	{
+		final Thresholds thresholds = mThresholds;
 		if (quality == mQuality && Util.equalString(codec, mCodec) && Util.equalString(iceState, mIceState)
-				&& upload == mUpload && download == mDownload && jitter == mJitter && packetLoss == mPacketLoss
-				&& latePackets == mLatePackets && roundTripDelay == mRoundTripDelay && Util.equalString(encryptionDescription, mEncryptionDescription)) {
+				&& !isSignificant(mUpload, upload, thresholds.bandwidth, thresholds.bandwidthRelative)
+				&& !isSignificant(mDownload, download, thresholds.bandwidth, thresholds.bandwidthRelative)
+				&& !isSignificant(mJitter, jitter, thresholds.jitter, thresholds.jitterRelative)
+				&& !isSignificant(mPacketLoss, packetLoss, thresholds.packetLoss, 0)
+				&& !isSignificant(mLatePackets, latePackets, thresholds.latePackets, 0)
+				&& !isSignificant(mRoundTripDelay, roundTripDelay, thresholds.roundTripDelay, thresholds.roundTripDelayRelative)
+				&& Util.equalString(encryptionDescription, mEncryptionDescription)) {
 			return false;
 		}
 
@@ -65,6 +127,21 @@ public final class CallConnectionDetails
 		return true;
 	}
 
+	private static boolean isSignificant(final long reported, final long current, final long absolute, final float relative)
+	{
+		if (reported == current) {
+			return false;
+		}
+
+		// becoming known, unknown or zero is always significant
+		if (reported <= 0 || current <= 0) {
+			return true;
+		}
+
+		final long difference = Math.abs(current - reported);
+		return difference > absolute && difference > (long) (reported * relative);
+	}
+
 	public boolean updateEndedCall()
 	{
 		if (mEndedCall) {
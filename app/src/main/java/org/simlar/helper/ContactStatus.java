@@ -35,6 +35,15 @@ public enum ContactStatus
 		};
 	}
 
+	public int toInt()
+	{
+		return switch (this) {
+			case NOT_REGISTERED -> 0;
+			case REGISTERED -> 1;
+			case UNKNOWN -> -1;
+		};
+	}
+
 	public boolean isRegistered()
 	{
 		return this == REGISTERED;
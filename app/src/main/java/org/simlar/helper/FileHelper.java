@@ -21,25 +21,52 @@
 package org.simlar.helper;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serial;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.simlar.R;
 import org.simlar.logging.Lg;
+import org.simlar.utils.Scheduler;
+import org.simlar.utils.Streams;
 import org.simlar.utils.Util;
 
 public final class FileHelper
 {
+	private static final String ASSET_MANIFEST = "asset_manifest";
+	private static final int ASSET_MANIFEST_FORMAT_VERSION = 1;
+	private static final long ASSET_COPY_TIMEOUT_SECONDS = 10;
+	private static final CountDownLatch mAssetsCopied = new CountDownLatch(1);
+
 	private static String mRootCaFileName = null;
 	private static String mZrtpSecretsCacheFileName = null;
 	private static String mLinphoneInitialConfigFile = null;
 	private static String mFakePhoneBookPicture = null;
 	private static String mRingbackSoundFile = null;
 	private static String mPauseSoundFile = null;
+	private static String mContactsCacheFileName = null;
+	private static String mPhoneBookSnapshotFileName = null;
+	private static String mSimlarNumberCacheFileName = null;
+	private static String mContactsStatusFileName = null;
+	private static String mLogDirectoryName = null;
+	private static String mLogUploadQueueDirectoryName = null;
+	private static String mCallQualityFileName = null;
+	private static String mCallQualityHistoryFileName = null;
+	private static String mCallQualityHistoryKeyFileName = null;
 
 	private FileHelper()
 	{
@@ -62,13 +89,30 @@ public final class FileHelper
 		mFakePhoneBookPicture = basePath + "/fake_phone_book_picture.webp";
 		mRingbackSoundFile = basePath + "/ringback.wav";
 		mPauseSoundFile = basePath + "/pause.wav";
+		mContactsCacheFileName = basePath + "/contacts_cache";
+		mPhoneBookSnapshotFileName = basePath + "/phone_book_snapshot";
+		mSimlarNumberCacheFileName = basePath + "/simlar_number_cache";
+		mContactsStatusFileName = basePath + "/contacts_status";
+		mLogDirectoryName = basePath + "/logs";
+		mLogUploadQueueDirectoryName = basePath + "/log_upload_queue";
+		mCallQualityFileName = basePath + "/call_quality";
+		mCallQualityHistoryFileName = basePath + "/call_quality_history";
+		mCallQualityHistoryKeyFileName = basePath + "/call_quality_history_key";
 
-		// Always overwrite to make updates of the files work
-		copyFileFromPackage(context, R.raw.rootca, new File(mRootCaFileName).getName());
-		copyFileFromPackage(context, R.raw.linphonerc, new File(mLinphoneInitialConfigFile).getName());
-		copyFileFromPackage(context, R.raw.fake_phone_book_picture, new File(mFakePhoneBookPicture).getName());
-		copyFileFromPackage(context, R.raw.ringback, new File(basePath + "/ringback.wav").getName());
-		copyFileFromPackage(context, R.raw.pause, new File(mPauseSoundFile).getName());
+		// copy the files in the background but only if the app changed since they were copied last time
+		final Context appContext = context.getApplicationContext();
+		final String versionStamp = Version.getVersionCode(context) + ":" + Version.getLastUpdateTime(context);
+		final Asset[] assets = {
+				new Asset(R.raw.rootca, new File(mRootCaFileName)),
+				new Asset(R.raw.linphonerc, new File(mLinphoneInitialConfigFile)),
+				new Asset(R.raw.fake_phone_book_picture, new File(mFakePhoneBookPicture)),
+				new Asset(R.raw.ringback, new File(mRingbackSoundFile)),
+				new Asset(R.raw.pause, new File(mPauseSoundFile))
+		};
+		Scheduler.execute(Scheduler.Pool.DISK, Scheduler.Priority.CALL, () -> {
+			copyAssets(appContext, new File(basePath + "/" + ASSET_MANIFEST), versionStamp, assets);
+			mAssetsCopied.countDown();
+		});
 	}
 
 	public static boolean isInitialized()
@@ -78,23 +122,158 @@ public final class FileHelper
 				!Util.isNullOrEmpty(mLinphoneInitialConfigFile) &&
 				!Util.isNullOrEmpty(mFakePhoneBookPicture) &&
 				!Util.isNullOrEmpty(mRingbackSoundFile) &&
-				!Util.isNullOrEmpty(mPauseSoundFile);
+				!Util.isNullOrEmpty(mPauseSoundFile) &&
+				!Util.isNullOrEmpty(mContactsCacheFileName) &&
+				!Util.isNullOrEmpty(mPhoneBookSnapshotFileName) &&
+				!Util.isNullOrEmpty(mSimlarNumberCacheFileName) &&
+				!Util.isNullOrEmpty(mContactsStatusFileName) &&
+				!Util.isNullOrEmpty(mLogDirectoryName) &&
+				!Util.isNullOrEmpty(mLogUploadQueueDirectoryName) &&
+				!Util.isNullOrEmpty(mCallQualityFileName) &&
+				!Util.isNullOrEmpty(mCallQualityHistoryFileName) &&
+				!Util.isNullOrEmpty(mCallQualityHistoryKeyFileName);
+	}
+
+	/// Blocks until the files from the package are in place. Never call it on the main thread.
+	public static void waitForAssets()
+	{
+		if (!isInitialized()) {
+			return;
+		}
+
+		try {
+			if (!mAssetsCopied.await(ASSET_COPY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				Lg.w("timeout waiting for assets to be copied");
+			}
+		} catch (final InterruptedException e) {
+			Lg.ex(e, "InterruptedException waiting for assets to be copied");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class Asset
+	{
+		final int resourceId;
+		final File target;
+
+		Asset(final int resourceId, final File target)
+		{
+			this.resourceId = resourceId;
+			this.target = target;
+		}
+	}
+
+	private static Map<String, Long> readAssetManifest(final File manifest, final String versionStamp)
+	{
+		final Map<String, Long> sizes = new HashMap<>();
+		if (!manifest.exists()) {
+			return sizes;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)))) {
+			if (in.readInt() != ASSET_MANIFEST_FORMAT_VERSION || !Util.equalString(in.readUTF(), versionStamp)) {
+				Lg.i("asset manifest outdated => copying all assets");
+				return sizes;
+			}
+
+			final int count = in.readInt();
+			for (int i = 0; i < count; ++i) {
+				sizes.put(in.readUTF(), in.readLong());
+			}
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while reading asset manifest");
+			sizes.clear();
+		}
+		return sizes;
+	}
+
+	private static void writeAssetManifest(final File manifest, final String versionStamp, final Map<String, Long> sizes)
+	{
+		final File tmpFile = new File(manifest.getPath() + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(ASSET_MANIFEST_FORMAT_VERSION);
+			out.writeUTF(versionStamp);
+			out.writeInt(sizes.size());
+			for (final Map.Entry<String, Long> entry : sizes.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue());
+			}
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while writing asset manifest");
+			return;
+		}
+
+		if (!tmpFile.renameTo(manifest)) {
+			Lg.e("failed to rename asset manifest");
+		}
 	}
 
-	private static void copyFileFromPackage(final Context context, final int resourceId, final String target)
+	private static void copyAssets(final Context context, final File manifest, final String versionStamp, final Asset[] assets)
 	{
-		//noinspection OverlyBroadCatchBlock
+		final Map<String, Long> sizes = readAssetManifest(manifest, versionStamp);
+		boolean changed = false;
+		for (final Asset asset : assets) {
+			final String name = asset.target.getName();
+			final Long size = sizes.get(name);
+			if (size != null && size == asset.target.length()) {
+				continue;
+			}
+
+			sizes.remove(name);
+			changed = true;
+			if (copyFileFromPackage(context, asset.resourceId, asset.target)) {
+				sizes.put(name, asset.target.length());
+			}
+		}
+
+		if (changed) {
+			writeAssetManifest(manifest, versionStamp, sizes);
+		} else {
+			Lg.i("assets unchanged");
+		}
+	}
+
+	private static void copyResource(final Context context, final int resourceId, final FileOutputStream outputStream) throws IOException
+	{
+		// resources stored uncompressed in the apk may be transferred directly from the apk file
+		final AssetFileDescriptor descriptor;
 		try {
-			final FileOutputStream outputStream = context.openFileOutput(target, 0);
-			final InputStream inputStream = context.getResources().openRawResource(resourceId);
-			Util.copyStream(inputStream, outputStream);
-			outputStream.flush();
-			outputStream.close();
-			inputStream.close();
-			Lg.i("created ", target);
+			descriptor = context.getResources().openRawResourceFd(resourceId);
+		} catch (final Resources.NotFoundException e) {
+			try (final InputStream inputStream = context.getResources().openRawResource(resourceId)) {
+				Streams.copy(inputStream, outputStream);
+			}
+			return;
+		}
+
+		// closing the stream closes the descriptor as well
+		try (final FileInputStream inputStream = descriptor.createInputStream()) {
+			final long length = descriptor.getLength();
+			if (Streams.transfer(inputStream.getChannel(), descriptor.getStartOffset(), length, outputStream.getChannel()) != length) {
+				throw new IOException("incomplete transfer of resource " + resourceId);
+			}
+		}
+	}
+
+	private static boolean copyFileFromPackage(final Context context, final int resourceId, final File target)
+	{
+		// write to a temporary file first so that a crash never leaves a half written file
+		final File tmpFile = new File(target.getPath() + ".tmp");
+		try (final FileOutputStream outputStream = new FileOutputStream(tmpFile)) {
+			copyResource(context, resourceId, outputStream);
+			outputStream.getFD().sync();
 		} catch (final IOException e) {
-			Lg.ex(e, "IOException: failed to create: ", target);
+			Lg.ex(e, "IOException: failed to create: ", target.getName());
+			return false;
+		}
+
+		if (!tmpFile.renameTo(target)) {
+			Lg.e("failed to rename ", tmpFile.getName(), " to ", target.getName());
+			return false;
 		}
+
+		Lg.i("created ", target.getName());
+		return true;
 	}
 
 	@SuppressWarnings("WeakerAccess")
@@ -151,4 +330,76 @@ public final class FileHelper
 		}
 		return mPauseSoundFile;
 	}
+
+	public static String getContactsCacheFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mContactsCacheFileName)) {
+			throw new NotInitedException();
+		}
+		return mContactsCacheFileName;
+	}
+
+	public static String getPhoneBookSnapshotFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mPhoneBookSnapshotFileName)) {
+			throw new NotInitedException();
+		}
+		return mPhoneBookSnapshotFileName;
+	}
+
+	public static String getSimlarNumberCacheFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mSimlarNumberCacheFileName)) {
+			throw new NotInitedException();
+		}
+		return mSimlarNumberCacheFileName;
+	}
+
+	public static String getContactsStatusFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mContactsStatusFileName)) {
+			throw new NotInitedException();
+		}
+		return mContactsStatusFileName;
+	}
+
+	public static String getLogDirectoryName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mLogDirectoryName)) {
+			throw new NotInitedException();
+		}
+		return mLogDirectoryName;
+	}
+
+	public static String getLogUploadQueueDirectoryName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mLogUploadQueueDirectoryName)) {
+			throw new NotInitedException();
+		}
+		return mLogUploadQueueDirectoryName;
+	}
+
+	public static String getCallQualityFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mCallQualityFileName)) {
+			throw new NotInitedException();
+		}
+		return mCallQualityFileName;
+	}
+
+	public static String getCallQualityHistoryFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mCallQualityHistoryFileName)) {
+			throw new NotInitedException();
+		}
+		return mCallQualityHistoryFileName;
+	}
+
+	public static String getCallQualityHistoryKeyFileName() throws NotInitedException
+	{
+		if (Util.isNullOrEmpty(mCallQualityHistoryKeyFileName)) {
+			throw new NotInitedException();
+		}
+		return mCallQualityHistoryKeyFileName;
+	}
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.helper;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import org.simlar.utils.Util;
+
+public enum NetworkType
+{
+	NONE,
+	WIFI,
+	MOBILE,
+	ETHERNET,
+	OTHER;
+
+	public static NetworkType fromContext(final Context context)
+	{
+		final ConnectivityManager connectivityManager = Util.getSystemService(context, Context.CONNECTIVITY_SERVICE);
+		final Network network = connectivityManager.getActiveNetwork();
+		if (network == null) {
+			return NONE;
+		}
+
+		final NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+		if (capabilities == null) {
+			return NONE;
+		}
+
+		if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+			return WIFI;
+		}
+
+		if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+			return MOBILE;
+		}
+
+		if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+			return ETHERNET;
+		}
+
+		return OTHER;
+	}
+
+	public static NetworkType fromInt(final int i)
+	{
+		final NetworkType[] values = values();
+		return i >= 0 && i < values.length ? values[i] : NONE;
+	}
+
+	public boolean isMobile()
+	{
+		return this == MOBILE;
+	}
+}
@@ -27,12 +27,14 @@ import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.simlar.logging.Lg;
 import org.simlar.utils.Util;
 
 public final class SimlarNumber
 {
+	private static final Pattern SIMLAR_ID_PATTERN = Pattern.compile("\\*\\d*\\*");
 	private static String mDefaultRegion = null;
 	private final PhoneNumber mPhoneNumber;
 	private final String mPlainSimlarId;
@@ -143,8 +145,19 @@ public final class SimlarNumber
 
 	public static void setDefaultRegion(final int countryCallingCode)
 	{
-		mDefaultRegion = PhoneNumberUtil.getInstance().getRegionCodeForCountryCode(countryCallingCode);
+		final String defaultRegion = PhoneNumberUtil.getInstance().getRegionCodeForCountryCode(countryCallingCode);
+		final boolean changed = !Util.equalString(mDefaultRegion, defaultRegion);
+		mDefaultRegion = defaultRegion;
 		Lg.i("for number parsing now using default region: ", mDefaultRegion);
+
+		if (changed) {
+			SimlarNumberCache.invalidate();
+		}
+	}
+
+	static String getDefaultRegionCode()
+	{
+		return mDefaultRegion;
 	}
 
 	public static int getDefaultRegion()
@@ -171,6 +184,6 @@ public final class SimlarNumber
 
 	private static boolean hasSimlarIdFormat(final String telephoneNumber)
 	{
-		return !Util.isNullOrEmpty(telephoneNumber) && telephoneNumber.matches("\\*\\d*\\*");
+		return !Util.isNullOrEmpty(telephoneNumber) && SIMLAR_ID_PATTERN.matcher(telephoneNumber).matches();
 	}
 }
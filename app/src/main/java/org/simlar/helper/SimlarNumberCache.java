@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.simlar.helper.FileHelper.NotInitedException;
+import org.simlar.logging.Lg;
+import org.simlar.utils.Util;
+
+/**
+ * Remembers the simlarId and gui telephone number of raw telephone numbers for the current default
+ * region, because parsing with libphonenumber is the dominant cost of loading the telephone book.
+ */
+public final class SimlarNumberCache
+{
+	private static final int MAX_ENTRIES = 8192;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final BoundedMap mEntries = new BoundedMap();
+	private static String mRegion = null;
+	private static boolean mModified = false;
+
+	private SimlarNumberCache()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	public static final class Normalized
+	{
+		public final String simlarId;
+		public final String guiTelephoneNumber;
+
+		Normalized(final String simlarId, final String guiTelephoneNumber)
+		{
+			this.simlarId = simlarId;
+			this.guiTelephoneNumber = guiTelephoneNumber;
+		}
+	}
+
+	private static final class BoundedMap extends LinkedHashMap<String, Normalized>
+	{
+		@Serial
+		private static final long serialVersionUID = 1;
+
+		BoundedMap()
+		{
+			super(256, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Normalized> eldest)
+		{
+			return size() > MAX_ENTRIES;
+		}
+	}
+
+	public static Normalized normalize(final String telephoneNumber)
+	{
+		final String region = SimlarNumber.getDefaultRegionCode();
+		final Normalized cached = get(region, telephoneNumber);
+		if (cached != null) {
+			return cached;
+		}
+
+		// parse without holding the lock, so that several threads may parse in parallel
+		final SimlarNumber simlarNumber = new SimlarNumber(telephoneNumber);
+		final Normalized normalized = new Normalized(simlarNumber.getSimlarId(), simlarNumber.getGuiTelephoneNumber());
+
+		// numbers which are not parsable are cached as well
+		put(region, telephoneNumber, normalized);
+		return normalized;
+	}
+
+	private static synchronized Normalized get(final String region, final String telephoneNumber)
+	{
+		if (!Util.equalString(mRegion, region)) {
+			clear(region);
+		}
+
+		return mEntries.get(telephoneNumber);
+	}
+
+	private static synchronized void put(final String region, final String telephoneNumber, final Normalized normalized)
+	{
+		if (Util.isNullOrEmpty(region) || !Util.equalString(mRegion, region)) {
+			return;
+		}
+
+		mEntries.put(telephoneNumber, normalized);
+		mModified = true;
+	}
+
+	static synchronized void invalidate()
+	{
+		clear(SimlarNumber.getDefaultRegionCode());
+		mModified = true;
+	}
+
+	private static void clear(final String region)
+	{
+		if (!mEntries.isEmpty()) {
+			Lg.i("clearing simlar number cache for region: ", region);
+		}
+		mEntries.clear();
+		mRegion = region;
+	}
+
+	private static File getFile()
+	{
+		try {
+			return new File(FileHelper.getSimlarNumberCacheFileName());
+		} catch (final NotInitedException e) {
+			Lg.ex(e, "FileHelper.NotInitedException");
+			return null;
+		}
+	}
+
+	public static synchronized void readFromFile()
+	{
+		final File file = getFile();
+		if (file == null || !file.exists()) {
+			return;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				Lg.i("simlar number cache has an old format => ignoring it");
+				return;
+			}
+
+			final String region = in.readUTF();
+			if (!Util.equalString(region, SimlarNumber.getDefaultRegionCode())) {
+				Lg.i("simlar number cache was created for a different region => ignoring it");
+				return;
+			}
+
+			clear(region);
+			final int size = in.readInt();
+			for (int i = 0; i < size; ++i) {
+				mEntries.put(in.readUTF(), new Normalized(in.readUTF(), in.readUTF()));
+			}
+			mModified = false;
+			Lg.i("read simlar number cache with ", mEntries.size(), " entries");
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while reading simlar number cache");
+			clear(SimlarNumber.getDefaultRegionCode());
+		}
+	}
+
+	public static synchronized void writeToFile()
+	{
+		if (!mModified || Util.isNullOrEmpty(mRegion)) {
+			return;
+		}
+
+		final File file = getFile();
+		if (file == null) {
+			return;
+		}
+
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(mRegion);
+			out.writeInt(mEntries.size());
+			for (final Map.Entry<String, Normalized> entry : mEntries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue().simlarId);
+				out.writeUTF(entry.getValue().guiTelephoneNumber);
+			}
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException while writing simlar number cache");
+			return;
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			Lg.e("failed to rename simlar number cache: ", tmpFile.getName());
+			return;
+		}
+
+		mModified = false;
+	}
+}
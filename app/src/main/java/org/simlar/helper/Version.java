@@ -31,6 +31,11 @@ public final class Version
 		return getPackageInfo(context).versionCode;
 	}
 
+	public static long getLastUpdateTime(final Context context)
+	{
+		return getPackageInfo(context).lastUpdateTime;
+	}
+
 	public static boolean showDeveloperMenu()
 	{
 		return DEVELOPER_MENU;
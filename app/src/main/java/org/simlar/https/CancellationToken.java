@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+public final class CancellationToken
+{
+	private boolean mCancelled = false;
+
+	public synchronized void cancel()
+	{
+		mCancelled = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isCancelled()
+	{
+		return mCancelled;
+	}
+
+	// returns false if cancelled or interrupted before the time elapsed
+	synchronized boolean sleep(final long milliSeconds)
+	{
+		final long end = System.currentTimeMillis() + milliSeconds;
+		try {
+			long remaining = milliSeconds;
+			while (!mCancelled && remaining > 0) {
+				wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		return !mCancelled;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocket;
+
+import org.simlar.logging.Lg;
+
+final class ConnectionStatistics
+{
+	private static final int LOG_INTERVAL_POSTS = 20;
+	private static final AtomicInteger mRequests = new AtomicInteger();
+	private static final AtomicInteger mSockets = new AtomicInteger();
+	private static final AtomicInteger mFullHandshakes = new AtomicInteger();
+	private static final AtomicInteger mResumedHandshakes = new AtomicInteger();
+	private static final AtomicInteger mPosts = new AtomicInteger();
+	private static final AtomicInteger mFailedPosts = new AtomicInteger();
+	private static final AtomicInteger mRetries = new AtomicInteger();
+	private static final AtomicLong mTotalPostLatency = new AtomicLong();
+	private static final AtomicLong mMaxPostLatency = new AtomicLong();
+	private static final AtomicIntegerArray mFailures = new AtomicIntegerArray(RetryPolicy.Failure.values().length);
+
+	private ConnectionStatistics()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	static void onRequest()
+	{
+		mRequests.incrementAndGet();
+	}
+
+	static void onSocketCreated(final SSLSocket socket)
+	{
+		mSockets.incrementAndGet();
+
+		// estimate: a session created before the socket has probably been resumed from the session cache
+		final long socketCreationTime = System.currentTimeMillis();
+		socket.addHandshakeCompletedListener(event -> {
+			if (event.getSession().getCreationTime() < socketCreationTime) {
+				mResumedHandshakes.incrementAndGet();
+			} else {
+				mFullHandshakes.incrementAndGet();
+			}
+		});
+	}
+
+	static void onPost(final int retries, final long latency, final boolean success)
+	{
+		final int posts = mPosts.incrementAndGet();
+		mRetries.addAndGet(retries);
+		if (!success) {
+			mFailedPosts.incrementAndGet();
+		}
+		mTotalPostLatency.addAndGet(latency);
+		long max = mMaxPostLatency.get();
+		while (latency > max && !mMaxPostLatency.compareAndSet(max, latency)) {
+			max = mMaxPostLatency.get();
+		}
+
+		if (posts % LOG_INTERVAL_POSTS == 0) {
+			log();
+		}
+	}
+
+	static void onFailure(final RetryPolicy.Failure failure)
+	{
+		mFailures.incrementAndGet(failure.ordinal());
+	}
+
+	static void log()
+	{
+		final int requests = mRequests.get();
+		final int sockets = mSockets.get();
+		Lg.d("https connections: requests=", requests, " reused=", Math.max(requests - sockets, 0), " new sockets=", sockets,
+				" full handshakes=", mFullHandshakes.get(), " resumed handshakes (estimated)=", mResumedHandshakes.get());
+
+		final int posts = mPosts.get();
+		Lg.d("https posts: posts=", posts, " failed=", mFailedPosts.get(), " retries=", mRetries.get(),
+				" average latency=", posts == 0 ? 0 : mTotalPostLatency.get() / posts, "ms max latency=", mMaxPostLatency.get(), "ms",
+				" failures ", Arrays.toString(RetryPolicy.Failure.values()), "=", mFailures);
+	}
+}
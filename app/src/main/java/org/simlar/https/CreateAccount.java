@@ -20,16 +20,10 @@
 
 package org.simlar.https;
 
-import android.util.Xml;
-
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-
 import org.simlar.helper.CreateAccountMessage;
 import org.simlar.logging.Lg;
 import org.simlar.utils.Util;
@@ -118,7 +112,7 @@ public final class CreateAccount
 		}
 	}
 
-	public static RequestResult httpPostRequest(final String telephoneNumber, final String smsText)
+	public static RequestResult httpPostRequest(final String telephoneNumber, final String smsText, final CancellationToken cancellationToken)
 	{
 		Lg.i("httpPostRequest: ", new Lg.Anonymizer(telephoneNumber));
 
@@ -127,10 +121,10 @@ public final class CreateAccount
 		parameters.put("telephoneNumber", telephoneNumber);
 		parameters.put("smsText", smsText);
 
-		return new RequestResult(httpPost(parameters, "simlarId", "password"));
+		return new RequestResult(httpPost(parameters, "simlarId", "password", cancellationToken));
 	}
 
-	public static RequestResult httpPostCall(final String telephoneNumber, final String password)
+	public static RequestResult httpPostCall(final String telephoneNumber, final String password, final CancellationToken cancellationToken)
 	{
 		Lg.i("httpPostCall: ", new Lg.Anonymizer(telephoneNumber));
 
@@ -138,10 +132,10 @@ public final class CreateAccount
 		parameters.put("telephoneNumber", telephoneNumber);
 		parameters.put("password", password);
 
-		return new RequestResult(httpPost(URL_PATH_CALL, parameters, "simlarId", "password"));
+		return new RequestResult(httpPost(URL_PATH_CALL, parameters, "simlarId", "password", cancellationToken));
 	}
 
-	public static ConfirmResult httpPostConfirm(final String simlarId, final String registrationCode)
+	public static ConfirmResult httpPostConfirm(final String simlarId, final String registrationCode, final CancellationToken cancellationToken)
 	{
 		Lg.i("httpPostConfirm: simlarId=", new Lg.Anonymizer(simlarId), " registrationCode=", registrationCode);
 
@@ -150,69 +144,62 @@ public final class CreateAccount
 		parameters.put("simlarId", simlarId);
 		parameters.put("registrationCode", registrationCode);
 
-		return new ConfirmResult(httpPost(parameters, "simlarId", "registrationCode"));
+		return new ConfirmResult(httpPost(parameters, "simlarId", "registrationCode", cancellationToken));
 	}
 
 	private static Result httpPost(final String url, final Map<String, String> parameters,
-	                               final String responseAttribute1, final String responseAttribute2)
+	                               final String responseAttribute1, final String responseAttribute2, final CancellationToken cancellationToken)
 	{
-		final InputStream result = HttpsPost.post(url, parameters);
+		final InputStream result = HttpsPost.post(url, parameters, cancellationToken);
 
 		if (result == null) {
 			return null;
 		}
 
-		Result parsedResult = null;
 		try {
-			parsedResult = parseXml(result, responseAttribute1, responseAttribute2);
-		} catch (final XmlPullParserException e) {
-			Lg.ex(e, "parsing xml failed");
-		} catch (final IOException e) {
-			Lg.ex(e, "IOException");
+			return XmlResponseDecoder.decodeAndClose(result, new SuccessHandler(responseAttribute1, responseAttribute2));
+		} catch (final SimlarErrorException e) {
+			return new Result(e.getId(), null, null);
 		}
-
-		try {
-			result.close();
-		} catch (final IOException e) {
-			Lg.ex(e, "IOException");
-		}
-
-		return parsedResult;
 	}
 
 	@SuppressWarnings("SameParameterValue")
 	private static Result httpPost(final Map<String, String> parameters,
-	                               final String responseAttribute1, final String responseAttribute2)
+	                               final String responseAttribute1, final String responseAttribute2, final CancellationToken cancellationToken)
 	{
-		return httpPost(URL_PATH, parameters, responseAttribute1, responseAttribute2);
+		return httpPost(URL_PATH, parameters, responseAttribute1, responseAttribute2, cancellationToken);
 	}
 
-	private static Result parseXml(final InputStream inputStream, final String attribute1, final String attribute2)
-			throws XmlPullParserException, IOException
+	private static final class SuccessHandler implements XmlResponseDecoder.Handler<Result>
 	{
-		final XmlPullParser parser = Xml.newPullParser();
-		parser.setInput(inputStream, null);
-		parser.nextTag();
-
-		final String xmlRootElement = parser.getName();
-		if ("error".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 2
-				&& "id".equalsIgnoreCase(parser.getAttributeName(0))
-				&& "message".equalsIgnoreCase(parser.getAttributeName(1))) {
-			final int errorId = Integer.parseInt(parser.getAttributeValue(0));
-			Lg.i("server returned error: ", parser.getAttributeValue(1), " (", errorId, ")");
-			return new Result(errorId, null, null);
+		private final String mAttribute1;
+		private final String mAttribute2;
+		private Result mResult = null;
+
+		SuccessHandler(final String attribute1, final String attribute2)
+		{
+			mAttribute1 = attribute1;
+			mAttribute2 = attribute2;
 		}
 
-		if ("success".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 2
-				&& parser.getAttributeName(0).equals(attribute1)
-				&& parser.getAttributeName(1).equals(attribute2)) {
+		@Override
+		public boolean onRoot(final XmlResponseDecoder.Element root)
+		{
+			final String value1 = root.getAttribute(mAttribute1);
+			final String value2 = root.getAttribute(mAttribute2);
+			if (!root.is("success") || value1 == null || value2 == null) {
+				return false;
+			}
+
 			Lg.i("request success");
-			return new Result(Result.SUCCESS, parser.getAttributeValue(0), parser.getAttributeValue(1));
+			mResult = new Result(Result.SUCCESS, value1, value2);
+			return true;
 		}
 
-		Lg.e("unable to parse response: xmlRootElement=", xmlRootElement, " AttributeCount=", parser.getAttributeCount());
-		return null;
+		@Override
+		public Result getResult()
+		{
+			return mResult;
+		}
 	}
 }
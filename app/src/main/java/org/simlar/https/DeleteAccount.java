@@ -20,16 +20,10 @@
 
 package org.simlar.https;
 
-import android.util.Xml;
-
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-
 import org.simlar.helper.PreferencesHelper;
 import org.simlar.helper.PreferencesHelper.NotInitedException;
 import org.simlar.logging.Lg;
@@ -59,52 +53,39 @@ public final class DeleteAccount
 				return false;
 			}
 
-			boolean success = false;
-			try {
-				success = parseXml(result);
-			} catch (final XmlPullParserException e) {
-				Lg.ex(e, "parsing xml failed");
-			} catch (final IOException e) {
-				Lg.ex(e, "IOException in InputStream of HttpsPost");
-			}
-
 			try {
-				result.close();
-			} catch (final IOException e) {
-				Lg.ex(e, "IOException during close");
+				return Boolean.TRUE.equals(XmlResponseDecoder.decodeAndClose(result, new SuccessHandler(PreferencesHelper.getMySimlarId())));
+			} catch (final SimlarErrorException e) {
+				// already logged by XmlResponseDecoder
+				return false;
 			}
-
-			return success;
-
 		} catch (final NotInitedException e) {
 			Lg.ex(e, "PreferencesHelper.NotInitedException");
 			return false;
 		}
 	}
 
-	private static boolean parseXml(final InputStream inputStream) throws XmlPullParserException, IOException
+	private static final class SuccessHandler implements XmlResponseDecoder.Handler<Boolean>
 	{
-		final XmlPullParser parser = Xml.newPullParser();
-		parser.setInput(inputStream, null);
-		parser.nextTag();
+		private final String mSimlarId;
+		private boolean mSuccess = false;
 
-		final String xmlRootElement = parser.getName();
-		if ("error".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 2
-				&& "id".equalsIgnoreCase(parser.getAttributeName(0))
-				&& "message".equalsIgnoreCase(parser.getAttributeName(1))) {
-			Lg.e("server returned error: ", parser.getAttributeValue(1));
-			return false;
+		SuccessHandler(final String simlarId)
+		{
+			mSimlarId = simlarId;
 		}
 
-		if ("success".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 1
-				&& "simlarId".equalsIgnoreCase(parser.getAttributeName(0))
-				&& parser.getAttributeValue(0).equals(PreferencesHelper.getMySimlarId())) {
-			return true;
+		@Override
+		public boolean onRoot(final XmlResponseDecoder.Element root)
+		{
+			mSuccess = root.is("success") && root.hasAttribute("simlarId", mSimlarId);
+			return mSuccess;
 		}
 
-		Lg.e("parse error: ", parser.getPositionDescription());
-		return false;
+		@Override
+		public Boolean getResult()
+		{
+			return mSuccess;
+		}
 	}
 }
@@ -20,19 +20,17 @@
 
 package org.simlar.https;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
-import android.util.Xml;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-
 import org.simlar.helper.ContactStatus;
 import org.simlar.helper.PreferencesHelper;
 import org.simlar.helper.PreferencesHelper.NotInitedException;
@@ -41,109 +39,156 @@ import org.simlar.logging.Lg;
 public final class GetContactsStatus
 {
 	private static final String URL_PATH = "get-contacts-status.php";
+	private static final int CHUNK_SIZE = 500;
+	private static final RetryPolicy CHUNK_RETRY_POLICY = new RetryPolicy(2, 500, 2000, 10000);
+	private static final Transport DEFAULT_TRANSPORT = GetContactsStatus::postContactsStatus;
+
+	private static volatile Transport mTransport = DEFAULT_TRANSPORT;
 
 	private GetContactsStatus()
 	{
 		throw new AssertionError("This class was not meant to be instantiated");
 	}
 
-	/** @noinspection CheckedExceptionClass*/
-	public static final class SimlarErrorException extends Exception
+	@FunctionalInterface
+	public interface ChunkListener
 	{
-		public static final int WRONG_CREDENTIALS_ID = 10;
+		void onContactsStatusChunk(final Map<String, ContactStatus> contactsStatus);
+	}
 
-		@Serial
-		private static final long serialVersionUID = 1L;
-		private final int id;
+	interface Transport
+	{
+		// returns the response or null on failure
+		InputStream post(final Collection<String> contacts);
+	}
 
-		private SimlarErrorException(final int id, final String message)
-		{
-			super(message);
-			this.id = id;
+	// e.g. to answer from a local stand-in server, null restores the default
+	static void setTransport(final Transport transport)
+	{
+		mTransport = transport != null ? transport : DEFAULT_TRANSPORT;
+	}
+
+	public static Map<String, ContactStatus> httpPostGetContactsStatus(final Set<String> contacts) throws SimlarErrorException
+	{
+		Lg.i("httpPostGetContactsStatus requested");
+		return requestContactsStatus(contacts);
+	}
+
+	// requests the status in chunks, so that big telephone books do not end up in one giant request
+	public static Map<String, ContactStatus> httpPostGetContactsStatus(final Set<String> contacts, final ChunkListener listener)
+			throws SimlarErrorException
+	{
+		final List<String> simlarIds = new ArrayList<>(contacts);
+		final int chunks = (simlarIds.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		Lg.i("httpPostGetContactsStatus requested for ", simlarIds.size(), " contacts in ", chunks, " chunks");
+
+		final Map<String, ContactStatus> result = new HashMap<>();
+		for (int i = 0; i < chunks; ++i) {
+			final List<String> chunk = simlarIds.subList(i * CHUNK_SIZE, Math.min((i + 1) * CHUNK_SIZE, simlarIds.size()));
+
+			// HttpsPost already retries network failures, this retries broken responses of this chunk only
+			final long start = SystemClock.elapsedRealtime();
+			Map<String, ContactStatus> chunkResult = null;
+			for (int retry = 0; chunkResult == null; ++retry) {
+				if (retry > 0) {
+					final long delay = CHUNK_RETRY_POLICY.getRetryDelay(RetryPolicy.Failure.PARSE, retry - 1, SystemClock.elapsedRealtime() - start);
+					if (delay < 0 || !sleep(delay)) {
+						Lg.e("parsing chunk ", i + 1, " of ", chunks, " failed");
+						return null;
+					}
+					Lg.w("retrying chunk ", i + 1, " of ", chunks, " after broken response");
+				}
+
+				final InputStream response = mTransport.post(chunk);
+				if (response == null) {
+					Lg.e("requesting chunk ", i + 1, " of ", chunks, " failed");
+					return null;
+				}
+
+				chunkResult = XmlResponseDecoder.decodeAndClose(response, new ContactsStatusHandler(chunk.size()));
+			}
+
+			result.putAll(chunkResult);
+			if (listener != null) {
+				listener.onContactsStatusChunk(chunkResult);
+			}
 		}
 
-		public int getId()
-		{
-			return id;
+		return result;
+	}
+
+	private static boolean sleep(final long milliSeconds)
+	{
+		try {
+			Thread.sleep(milliSeconds);
+			return true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
 	}
 
-	public static Map<String, ContactStatus> httpPostGetContactsStatus(final Set<String> contacts) throws SimlarErrorException
+	private static Map<String, ContactStatus> requestContactsStatus(final Collection<String> contacts) throws SimlarErrorException
 	{
-		Lg.i("httpPostGetContactsStatus requested");
+		final InputStream response = mTransport.post(contacts);
+		if (response == null) {
+			return null;
+		}
 
+		return XmlResponseDecoder.decodeAndClose(response, new ContactsStatusHandler(contacts.size()));
+	}
+
+	private static InputStream postContactsStatus(final Collection<String> contacts)
+	{
 		try {
 			final Map<String, String> parameters = new HashMap<>();
 			parameters.put("login", PreferencesHelper.getMySimlarId());
 			parameters.put("password", PreferencesHelper.getPasswordHash());
 			parameters.put("contacts", TextUtils.join("|", contacts));
 
-			final InputStream result = HttpsPost.post(URL_PATH, parameters);
-
-			if (result == null) {
-				return null;
-			}
-
-			Map<String, ContactStatus> parsedResult = null;
-			try {
-				parsedResult = parseXml(result);
-			} catch (final XmlPullParserException e) {
-				Lg.ex(e, "parsing xml failed");
-			} catch (final IOException e) {
-				Lg.ex(e, "IOException: ");
-			}
-
-			try {
-				result.close();
-			} catch (final IOException e) {
-				Lg.ex(e, "IOException: ");
-			}
-
-			return parsedResult;
+			return HttpsPost.post(URL_PATH, parameters);
 		} catch (final NotInitedException e) {
 			Lg.ex(e, "PreferencesHelper.NotInitedException");
 			return null;
 		}
 	}
 
-	private static Map<String, ContactStatus> parseXml(final InputStream inputStream) throws XmlPullParserException, IOException, SimlarErrorException
+	private static final class ContactsStatusHandler implements XmlResponseDecoder.Handler<Map<String, ContactStatus>>
 	{
-		final XmlPullParser parser = Xml.newPullParser();
-		parser.setInput(inputStream, null);
-		parser.nextTag();
-
-		final String xmlRootElement = parser.getName();
-		if ("error".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 2
-				&& "id".equalsIgnoreCase(parser.getAttributeName(0))
-				&& "message".equalsIgnoreCase(parser.getAttributeName(1))) {
-			Lg.e("server returned error: ", parser.getAttributeValue(1));
-			throw new SimlarErrorException(Integer.parseInt(parser.getAttributeValue(0)), parser.getAttributeValue(1));
+		private final Map<String, ContactStatus> mResult;
+
+		ContactsStatusHandler(final int expectedContacts)
+		{
+			mResult = new HashMap<>(expectedContacts * 4 / 3 + 1);
 		}
 
-		if (!"contacts".equalsIgnoreCase(xmlRootElement)) {
-			Lg.e("unable to parse response");
-			return null;
+		@Override
+		public boolean onRoot(final XmlResponseDecoder.Element root)
+		{
+			return root.is("contacts");
 		}
 
-		final Map<String, ContactStatus> parsedResult = new HashMap<>();
-		while (parser.next() != XmlPullParser.END_DOCUMENT) {
-			if (parser.getEventType() != XmlPullParser.START_TAG) {
-				continue;
+		@Override
+		public void onElement(final XmlResponseDecoder.Element element)
+		{
+			if (!element.is("contact")) {
+				return;
 			}
 
-			if (!"contact".equalsIgnoreCase(parser.getName())
-					|| parser.getAttributeCount() < 2
-					|| !"id".equalsIgnoreCase(parser.getAttributeName(0))
-					|| !"status".equalsIgnoreCase(parser.getAttributeName(1))) {
-				continue;
+			final String id = element.getAttribute("id");
+			final int status = element.getIntAttribute("status", -1);
+			if (id == null || status < 0) {
+				Lg.w("skipping contact: ", element.getPositionDescription());
+				return;
 			}
 
-			final String id = parser.getAttributeValue(0);
-			final ContactStatus status = ContactStatus.fromInt(Integer.parseInt(parser.getAttributeValue(1)));
+			mResult.put(id, ContactStatus.fromInt(status));
+		}
 
-			parsedResult.put(id, status);
+		@Override
+		public Map<String, ContactStatus> getResult()
+		{
+			return mResult;
 		}
-		return parsedResult;
 	}
 }
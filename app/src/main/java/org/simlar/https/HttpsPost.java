@@ -20,9 +20,11 @@
 
 package org.simlar.https;
 
+import android.os.SystemClock;
+
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
@@ -34,18 +36,19 @@ import javax.net.ssl.HttpsURLConnection;
 
 import org.simlar.helper.ServerSettings;
 import org.simlar.logging.Lg;
+import org.simlar.utils.Streams;
 
 final class HttpsPost
 {
 	private static final String SERVER_URL = "https://" + ServerSettings.DOMAIN + ":6161/";
 
-	private static final int MAX_RETRIES = 5;
-
 	private static final char PARAMETER_DELIMITER = '&';
 	private static final char PARAMETER_EQUALS_CHAR = '=';
 
 	public static final String DATA_BOUNDARY = "*****";
 
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
 	private HttpsPost()
 	{
 		throw new AssertionError("This class was not meant to be instantiated");
@@ -83,6 +86,7 @@ final class HttpsPost
 			final URL url = new URL(SERVER_URL + '/' + urlPath);
 
 			final HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
+			ConnectionStatistics.onRequest();
 			connection.setSSLSocketFactory(SimlarSSLSocketFactory.getInstance());
 			connection.setDoInput(true); // default
 			connection.setDoOutput(true);
@@ -105,63 +109,116 @@ final class HttpsPost
 		return null;
 	}
 
+	private static final class PostResult
+	{
+		final InputStream inputStream;
+		final RetryPolicy.Failure failure;
+
+		PostResult(final InputStream inputStream, final RetryPolicy.Failure failure)
+		{
+			this.inputStream = inputStream;
+			this.failure = failure;
+		}
+	}
+
 	public static InputStream post(final String urlPath, final Map<String, String> parameters)
 	{
-		for (int i = 0; i <= MAX_RETRIES; ++i) {
-			if (i != 0) {
-				try {
-					Lg.i("sleeping 500ms before retrying post: ", urlPath);
-					Thread.sleep(500);
-				} catch (final InterruptedException e) {
-					Lg.ex(e, "sleep interrupted");
-				}
+		return post(urlPath, parameters, new CancellationToken());
+	}
+
+	public static InputStream post(final String urlPath, final Map<String, String> parameters, final CancellationToken cancellationToken)
+	{
+		final long start = SystemClock.elapsedRealtime();
+		for (int retry = 0; ; ++retry) {
+			if (cancellationToken.isCancelled()) {
+				Lg.i("post cancelled: ", urlPath);
+				ConnectionStatistics.onPost(retry, SystemClock.elapsedRealtime() - start, false);
+				return null;
 			}
 
-			final InputStream postResponse = postPrivate(urlPath, parameters);
-			if (postResponse != null) {
-				return postResponse;
+			final PostResult result = postPrivate(urlPath, parameters);
+			final long elapsed = SystemClock.elapsedRealtime() - start;
+			if (result.inputStream != null) {
+				ConnectionStatistics.onPost(retry, elapsed, true);
+				return result.inputStream;
+			}
+
+			ConnectionStatistics.onFailure(result.failure);
+			final long delay = RetryPolicy.DEFAULT.getRetryDelay(result.failure, retry, elapsed);
+			if (delay < 0) {
+				Lg.w("giving up post: ", urlPath, " after ", retry + 1, " attempts and ", elapsed, "ms, last failure: ", result.failure);
+				ConnectionStatistics.onPost(retry, elapsed, false);
+				return null;
+			}
+
+			Lg.i("post failed with ", result.failure, ", sleeping ", delay, "ms before retrying: ", urlPath);
+			if (!cancellationToken.sleep(delay)) {
+				Lg.i("post cancelled while waiting for retry: ", urlPath);
+				ConnectionStatistics.onPost(retry, SystemClock.elapsedRealtime() - start, false);
+				return null;
 			}
 		}
-		return null;
 	}
 
-	private static OutputStream getOutputStream(final HttpsURLConnection connection)
+	private static PostResult postPrivate(final String urlPath, final Map<String, String> parameters)
 	{
+		final HttpsURLConnection connection = createConnection(urlPath, false);
 		if (connection == null) {
-			return null;
+			return new PostResult(null, RetryPolicy.Failure.CLIENT_ERROR);
 		}
 
-		try {
-			return connection.getOutputStream();
+		try (final PrintWriter out = new PrintWriter(connection.getOutputStream())) {
+			out.print(createQueryStringForParameters(parameters));
+			out.flush();
+
+			final int responseCode = connection.getResponseCode();
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				Lg.e("server response error(", responseCode, "): ", connection.getResponseMessage());
+				drainAndClose(connection.getErrorStream());
+				return new PostResult(null, RetryPolicy.classify(responseCode));
+			}
+
+			Lg.i("used CipherSuite: ", connection.getCipherSuite());
+			return new PostResult(new DrainingInputStream(connection.getInputStream()), null);
 		} catch (final IOException e) {
-			Lg.ex(e, "IOException while getting OutputStream");
-			return null;
+			Lg.ex(e, "IOException while posting");
+			return new PostResult(null, RetryPolicy.classify(e));
 		}
 	}
 
-	private static InputStream postPrivate(final String urlPath, final Map<String, String> parameters)
+	// A connection only goes back to the keep-alive pool if its response has been read completely.
+	// So parsers which stop early do not force a new TLS handshake for the next request.
+	private static final class DrainingInputStream extends FilterInputStream
 	{
-		final HttpsURLConnection connection = createConnection(urlPath, false);
+		DrainingInputStream(final InputStream in)
+		{
+			super(in);
+		}
 
-		final OutputStream stream = getOutputStream(connection);
-		if (stream == null) {
-			return null;
+		@Override
+		public void close() throws IOException
+		{
+			drain(in);
+			super.close();
 		}
+	}
 
-		try (final PrintWriter out = new PrintWriter(stream)) {
-			out.print(createQueryStringForParameters(parameters));
-			out.flush();
+	private static void drain(final InputStream inputStream) throws IOException
+	{
+		Streams.drain(inputStream, MAX_DRAIN_BYTES);
+	}
 
-			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-				Lg.e("server response error(", connection.getResponseCode(), "): ", connection.getResponseMessage());
-				return null;
-			}
+	static void drainAndClose(final InputStream inputStream)
+	{
+		if (inputStream == null) {
+			return;
+		}
 
-			Lg.i("used CipherSuite: ", connection.getCipherSuite());
-			return connection.getInputStream();
+		try {
+			drain(inputStream);
+			inputStream.close();
 		} catch (final IOException e) {
-			Lg.ex(e, "IOException while posting");
-			return null;
+			Lg.ex(e, "IOException while draining response");
 		}
 	}
 }
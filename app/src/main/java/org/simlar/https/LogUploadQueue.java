@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.zip.GZIPOutputStream;
+
+import org.simlar.helper.FileHelper;
+import org.simlar.logging.Lg;
+import org.simlar.utils.Scheduler;
+import org.simlar.utils.Streams;
+
+/// Persistent queue of compressed log files waiting for upload.
+///
+/// A log file is compressed into the queue directory under the name it gets on the server. It stays there until
+/// the server accepted it, so a failed upload is retried as a whole later on, even after the app has been restarted.
+/// Retries are rescheduled instead of waited for, so a retrying upload never blocks a network thread.
+public final class LogUploadQueue
+{
+	static final String GZIP_SUFFIX = ".gz";
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final RetryPolicy UPLOAD_RETRY_POLICY = new RetryPolicy(6, 1000, 30000, 120000);
+	private static final long QUEUE_RETRY_DELAY_MILLISECONDS = 15 * 60 * 1000;
+	private static final long MAX_AGE_MILLISECONDS = 7 * 24 * 60 * 60 * 1000L;
+
+	private static final Executor mExecutor = Scheduler.createSerialExecutor(Scheduler.Pool.NETWORK, Scheduler.Priority.BACKGROUND);
+	private static final Uploader DEFAULT_UPLOADER = UploadLogFile::postFile;
+	private static final Set<String> mUploading = new HashSet<>(); // only accessed on mExecutor
+	private static ScheduledFuture<?> mQueueRetry = null; // only accessed on mExecutor
+	private static volatile Uploader mUploader = DEFAULT_UPLOADER;
+	private static volatile File mDirectory = null;
+	private static volatile WeakReference<Listener> mListener = new WeakReference<>(null);
+
+	interface ProgressListener
+	{
+		void onProgress(final int percent);
+	}
+
+	interface Uploader
+	{
+		// returns null on success
+		RetryPolicy.Failure upload(final File file, final String uploadFileName, final ProgressListener progressListener);
+	}
+
+	interface Listener
+	{
+		void onProgress(final String uploadFileName, final int percent);
+
+		void onFinished(final String uploadFileName, final boolean success);
+	}
+
+	private LogUploadQueue()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	// e.g. to upload to a local stand-in server, null restores the default
+	static void setUploader(final Uploader uploader)
+	{
+		mUploader = uploader != null ? uploader : DEFAULT_UPLOADER;
+	}
+
+	// e.g. a temporary directory in unit tests, null restores the default
+	static void setDirectory(final File directory)
+	{
+		mDirectory = directory;
+	}
+
+	/// only weakly referenced, so that a forgotten listener does not keep an activity alive
+	static void setListener(final Listener listener)
+	{
+		mListener = new WeakReference<>(listener);
+	}
+
+	static void removeListener(final Listener listener)
+	{
+		if (mListener.get() == listener) {
+			mListener = new WeakReference<>(null);
+		}
+	}
+
+	private static void notifyProgress(final String uploadFileName, final int percent)
+	{
+		final Listener listener = mListener.get();
+		if (listener != null) {
+			listener.onProgress(uploadFileName, percent);
+		}
+	}
+
+	private static void notifyFinished(final String uploadFileName, final boolean success)
+	{
+		final Listener listener = mListener.get();
+		if (listener != null) {
+			listener.onFinished(uploadFileName, success);
+		}
+	}
+
+	private static File getDirectory() throws IOException
+	{
+		final File directory = mDirectory != null ? mDirectory : new File(FileHelper.getLogUploadQueueDirectoryName());
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("failed to create log upload queue directory");
+		}
+		return directory;
+	}
+
+	/// takes over logFile and uploads it in the background, also if the caller is gone; uploadFileName has to end with GZIP_SUFFIX
+	static void add(final File logFile, final String uploadFileName)
+	{
+		mExecutor.execute(() -> {
+			try {
+				enqueue(logFile, uploadFileName);
+			} catch (final IOException e) {
+				Lg.ex(e, "IOException enqueuing log file: ", uploadFileName);
+				notifyFinished(uploadFileName, false);
+				return;
+			} finally {
+				deleteFile(logFile);
+			}
+
+			processAll();
+		});
+	}
+
+	private static void enqueue(final File logFile, final String uploadFileName) throws IOException
+	{
+		final File file = new File(getDirectory(), uploadFileName);
+		final File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+		try (final InputStream inputStream = new FileInputStream(logFile);
+			 final FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+			 final GZIPOutputStream outputStream = new GZIPOutputStream(fileOutputStream, BUFFER_SIZE)) {
+			Streams.copy(inputStream, outputStream, BUFFER_SIZE);
+			outputStream.finish();
+			fileOutputStream.getFD().sync();
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			deleteFile(tmpFile);
+			throw new IOException("failed to rename log file: " + tmpFile.getName());
+		}
+
+		Lg.i("enqueued log file ", uploadFileName, " with ", file.length(), " bytes");
+	}
+
+	/// uploads all queued log files in the background, e.g. after a restart of the app
+	public static void process()
+	{
+		if (!FileHelper.isInitialized()) {
+			Lg.w("FileHelper not initialized => not processing log upload queue");
+			return;
+		}
+
+		mExecutor.execute(LogUploadQueue::processAll);
+	}
+
+	private static void processAll()
+	{
+		final File directory;
+		try {
+			directory = getDirectory();
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException opening log upload queue");
+			return;
+		}
+
+		final File[] files = directory.listFiles();
+		if (files == null || files.length == 0) {
+			return;
+		}
+
+		Arrays.sort(files, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+		for (final File file : files) {
+			final String uploadFileName = file.getName();
+			if (mUploading.contains(uploadFileName)) {
+				continue;
+			}
+
+			if (!uploadFileName.endsWith(GZIP_SUFFIX)) {
+				// left over by an interrupted enqueue or an older queue format
+				deleteFile(file);
+				continue;
+			}
+
+			if (System.currentTimeMillis() - file.lastModified() > MAX_AGE_MILLISECONDS) {
+				Lg.w("dropping log file queued for too long: ", uploadFileName);
+				deleteFile(file);
+				continue;
+			}
+
+			mUploading.add(uploadFileName);
+			upload(file, uploadFileName, 0, SystemClock.elapsedRealtime());
+		}
+	}
+
+	private static void upload(final File file, final String uploadFileName, final int retry, final long start)
+	{
+		final RetryPolicy.Failure failure = mUploader.upload(file, uploadFileName, percent -> notifyProgress(uploadFileName, percent));
+		if (failure == null) {
+			Lg.i("uploaded log file ", uploadFileName);
+			deleteFile(file);
+			onUploadFinished(uploadFileName, true);
+			return;
+		}
+
+		final long delay = UPLOAD_RETRY_POLICY.getRetryDelay(failure, retry, SystemClock.elapsedRealtime() - start);
+		if (delay < 0) {
+			Lg.w("uploading ", uploadFileName, " failed with ", failure, " => giving up for now");
+			onUploadFinished(uploadFileName, false);
+			scheduleQueueRetry();
+			return;
+		}
+
+		Lg.i("uploading ", uploadFileName, " failed with ", failure, " => retrying in ", delay, "ms");
+		Scheduler.schedule(mExecutor, delay, () -> upload(file, uploadFileName, retry + 1, start));
+	}
+
+	private static void onUploadFinished(final String uploadFileName, final boolean success)
+	{
+		mUploading.remove(uploadFileName);
+		notifyFinished(uploadFileName, success);
+	}
+
+	private static void scheduleQueueRetry()
+	{
+		Lg.i("uploading log files failed => retrying in ", QUEUE_RETRY_DELAY_MILLISECONDS, "ms or after a restart of the app");
+		if (mQueueRetry != null) {
+			mQueueRetry.cancel(false);
+		}
+		mQueueRetry = Scheduler.schedule(mExecutor, QUEUE_RETRY_DELAY_MILLISECONDS, LogUploadQueue::processAll);
+	}
+
+	private static void deleteFile(final File file)
+	{
+		if (!file.delete()) {
+			Lg.w("deleting file failed: ", file.getName());
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import javax.net.ssl.SSLException;
+
+final class RetryPolicy
+{
+	enum Failure
+	{
+		DNS,
+		CONNECT,
+		TLS,
+		SERVER_ERROR,
+		CLIENT_ERROR,
+		PARSE,
+		IO;
+
+		boolean isRetryable()
+		{
+			return this != CLIENT_ERROR;
+		}
+	}
+
+	static final RetryPolicy DEFAULT = new RetryPolicy(5, 250, 4000, 30000);
+
+	private final int mMaxRetries;
+	private final long mInitialDelay;
+	private final long mMaxDelay;
+	private final long mDeadline;
+	private final Random mRandom = new Random();
+
+	RetryPolicy(final int maxRetries, final long initialDelay, final long maxDelay, final long deadline)
+	{
+		mMaxRetries = maxRetries;
+		mInitialDelay = initialDelay;
+		mMaxDelay = maxDelay;
+		mDeadline = deadline;
+	}
+
+	static Failure classify(final IOException exception)
+	{
+		if (exception instanceof UnknownHostException) {
+			return Failure.DNS;
+		}
+
+		if (exception instanceof SSLException) {
+			return Failure.TLS;
+		}
+
+		if (exception instanceof ConnectException || exception instanceof NoRouteToHostException || exception instanceof SocketTimeoutException) {
+			return Failure.CONNECT;
+		}
+
+		return Failure.IO;
+	}
+
+	static Failure classify(final int responseCode)
+	{
+		if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR || responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT || responseCode == 429) {
+			return Failure.SERVER_ERROR;
+		}
+
+		return Failure.CLIENT_ERROR;
+	}
+
+	// returns the time to wait before the next attempt or -1 if giving up
+	long getRetryDelay(final Failure failure, final int retry, final long elapsed)
+	{
+		if (!failure.isRetryable() || retry >= mMaxRetries) {
+			return -1;
+		}
+
+		// capped exponential backoff with equal jitter, so that clients do not retry in lockstep
+		final long delay = Math.min(mMaxDelay, mInitialDelay << Math.min(retry, 16));
+		final long jitteredDelay = delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+		if (elapsed + jitteredDelay > mDeadline) {
+			return -1;
+		}
+
+		return jitteredDelay;
+	}
+}
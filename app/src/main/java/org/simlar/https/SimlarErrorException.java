@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import java.io.Serial;
+
+/** @noinspection CheckedExceptionClass*/
+public final class SimlarErrorException extends Exception
+{
+	public static final int WRONG_CREDENTIALS_ID = 10;
+
+	@Serial
+	private static final long serialVersionUID = 1L;
+	private final int id;
+
+	SimlarErrorException(final int id, final String message)
+	{
+		super(message);
+		this.id = id;
+	}
+
+	public int getId()
+	{
+		return id;
+	}
+}
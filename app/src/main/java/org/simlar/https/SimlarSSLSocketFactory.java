@@ -53,6 +53,8 @@ final class SimlarSSLSocketFactory extends SSLSocketFactory
 {
 	private static final String[] PREFERRED_CIPHER_SUITES = { "TLS_DHE_RSA_WITH_AES_256_CBC_SHA", "DHE-RSA-AES256-SHA" };
 	private static final String[] PREFERRED_PROTOCOLS = { "TLSv1.3", "TLSv1.2", "TLSv1.1" };
+	private static final int SESSION_CACHE_SIZE = 8;
+	private static final int SESSION_TIMEOUT_SECONDS = 4 * 60 * 60;
 
 	private static final String[] CIPHER_SUITES = createCipherSuites();
 	private static final String[] PROTOCOLS = createProtocols();
@@ -92,6 +94,10 @@ final class SimlarSSLSocketFactory extends SSLSocketFactory
 			// Create an SSLContext that uses our TrustManager
 			final SSLContext context = SSLContext.getInstance("TLS");
 			context.init(null, tmf.getTrustManagers(), null);
+
+			// allow resuming TLS sessions if a connection can not be reused
+			context.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+			context.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
 			return context.getSocketFactory();
 		} catch (final CertificateException | NoSuchAlgorithmException | IOException | KeyStoreException | KeyManagementException e) {
 			// We expect Simlar to crash here as SSL connections are essential.
@@ -141,6 +147,9 @@ final class SimlarSSLSocketFactory extends SSLSocketFactory
 			return null;
 		}
 
+		// only used from network threads
+		FileHelper.waitForAssets();
+
 		InputStream caInput = null;
 		try {
 			final CertificateFactory cf = CertificateFactory.getInstance("X.509");
@@ -163,6 +172,14 @@ final class SimlarSSLSocketFactory extends SSLSocketFactory
 		}
 	}
 
+	private static Socket configure(final SSLSocket socket)
+	{
+		socket.setEnabledCipherSuites(CIPHER_SUITES);
+		socket.setEnabledProtocols(PROTOCOLS);
+		ConnectionStatistics.onSocketCreated(socket);
+		return socket;
+	}
+
 	@Override
 	public String[] getDefaultCipherSuites()
 	{
@@ -179,44 +196,34 @@ final class SimlarSSLSocketFactory extends SSLSocketFactory
 	public Socket createSocket(final Socket s, final String host, final int port, final boolean autoClose) throws IOException
 	{
 		final SSLSocket socket = (SSLSocket) mSSLSocketFactory.createSocket(s, host, port, autoClose);
-		socket.setEnabledCipherSuites(CIPHER_SUITES);
-		socket.setEnabledProtocols(PROTOCOLS);
-		return socket;
+		return configure(socket);
 	}
 
 	@Override
 	public Socket createSocket(final String host, final int port) throws IOException
 	{
 		final SSLSocket socket = (SSLSocket) mSSLSocketFactory.createSocket(host, port);
-		socket.setEnabledCipherSuites(CIPHER_SUITES);
-		socket.setEnabledProtocols(PROTOCOLS);
-		return socket;
+		return configure(socket);
 	}
 
 	@Override
 	public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException
 	{
 		final SSLSocket socket = (SSLSocket) mSSLSocketFactory.createSocket(host, port, localHost, localPort);
-		socket.setEnabledCipherSuites(CIPHER_SUITES);
-		socket.setEnabledProtocols(PROTOCOLS);
-		return socket;
+		return configure(socket);
 	}
 
 	@Override
 	public Socket createSocket(final InetAddress host, final int port) throws IOException
 	{
 		final SSLSocket socket = (SSLSocket) mSSLSocketFactory.createSocket(host, port);
-		socket.setEnabledCipherSuites(CIPHER_SUITES);
-		socket.setEnabledProtocols(PROTOCOLS);
-		return socket;
+		return configure(socket);
 	}
 
 	@Override
 	public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException
 	{
 		final SSLSocket socket = (SSLSocket) mSSLSocketFactory.createSocket(address, port, localAddress, localPort);
-		socket.setEnabledCipherSuites(CIPHER_SUITES);
-		socket.setEnabledProtocols(PROTOCOLS);
-		return socket;
+		return configure(socket);
 	}
 }
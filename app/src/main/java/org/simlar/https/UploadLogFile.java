@@ -20,6 +20,7 @@
 
 package org.simlar.https;
 
+import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
@@ -30,15 +31,21 @@ import android.os.Looper;
 
 import androidx.appcompat.app.AlertDialog;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -46,7 +53,11 @@ import org.simlar.R;
 import org.simlar.helper.ServerSettings;
 import org.simlar.helper.Version;
 import org.simlar.logging.Lg;
-import org.simlar.utils.Util;
+import org.simlar.logging.LogSink;
+import org.simlar.logging.Tracer;
+import org.simlar.service.liblinphone.CallQualityHistory;
+import org.simlar.utils.Scheduler;
+import org.simlar.utils.Streams;
 
 public final class UploadLogFile
 {
@@ -62,11 +73,16 @@ public final class UploadLogFile
 	private static final String URL_PATH = "upload-logfile.php";
 	private static final String UPLOAD_SFTP_LINK = "sftp://root@" + ServerSettings.DOMAIN + "/var/www/simlar/logfiles/";
 
+	private static final int CALL_QUALITY_HISTORY_CALLS = 100;
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int TRANSFER_CHUNK_SIZE = 16 * 1024;
+
 	private static final String LINE_END = "\r\n";
 	private static final String TWO_HYPHENS = "--";
 
 	private final Context mContext;
 	private final ProgressDialog mProgressDialog;
+	private LogUploadQueue.Listener mListener = null;
 
 	private static final class PostResult
 	{
@@ -87,85 +103,102 @@ public final class UploadLogFile
 		}
 	}
 
-	private static PostResult postFile(final File file)
+	// reports how much of a file of known size has been read
+	private static final class ProgressInputStream extends FilterInputStream
 	{
-		final HttpsURLConnection connection = HttpsPost.createConnection(URL_PATH, true);
-		if (connection == null) {
-			return new PostResult(false, "Building connection failed");
-		}
+		private final long mSize;
+		private final LogUploadQueue.ProgressListener mProgressListener;
+		private long mRead = 0;
+		private int mLastPercent = -1;
 
-		PostResult result;
-		DataOutputStream outputStream = null;
-		FileInputStream fileInputStream = null;
-		InputStream inputStream = null;
-		ByteArrayOutputStream responseStream = null;
-		try {
-			outputStream = new DataOutputStream(connection.getOutputStream());
-			outputStream.writeBytes(TWO_HYPHENS + HttpsPost.DATA_BOUNDARY + LINE_END);
-			outputStream.writeBytes("Content-Disposition: form-data; name=\"file\";filename=\""
-					+ file.getAbsolutePath() + '"' + LINE_END);
-			outputStream.writeBytes(LINE_END);
-
-			// copy log file
-			fileInputStream = new FileInputStream(file);
-			Util.copyStream(fileInputStream, outputStream);
-
-			outputStream.writeBytes(LINE_END);
-			outputStream.writeBytes(TWO_HYPHENS + HttpsPost.DATA_BOUNDARY + TWO_HYPHENS + LINE_END);
-			outputStream.flush();
-
-			if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-				inputStream = connection.getInputStream();
-				responseStream = new ByteArrayOutputStream();
-				Util.copyStream(inputStream, responseStream);
-				final String response = responseStream.toString();
-				Lg.i("used CipherSuite: ", connection.getCipherSuite());
-				Lg.i("Response ", response);
+		ProgressInputStream(final File file, final LogUploadQueue.ProgressListener progressListener) throws IOException
+		{
+			super(new FileInputStream(file));
+			mSize = Math.max(file.length(), 1);
+			mProgressListener = progressListener;
+			onRead(0);
+		}
 
-				result = response.matches("OK \\d*") ? new PostResult(true, file.getName()) : new PostResult(false, response);
-			} else {
-				result = new PostResult(false, connection.getResponseMessage());
-				Lg.w("posting file failed with error code ", connection.getResponseMessage(), " and message ",
-						connection.getResponseMessage());
+		@Override
+		public int read() throws IOException
+		{
+			final int result = super.read();
+			if (result != -1) {
+				onRead(1);
 			}
-		} catch (final FileNotFoundException e) {
-			result = new PostResult(false, "Creating log file failed");
-			Lg.ex(e, "FileNotFoundException during postFile");
-		} catch (final IOException e) {
-			result = new PostResult(false, "Posting log file failed");
-			Lg.ex(e, "IOException during postFile");
+			return result;
 		}
 
-		try {
-			if (outputStream != null) {
-				outputStream.close();
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException
+		{
+			final int result = super.read(buffer, offset, length);
+			if (result > 0) {
+				onRead(result);
 			}
-		} catch (final IOException e) {
-			Lg.ex(e, "Exception during outputStream.close()");
+			return result;
 		}
-		try {
-			if (fileInputStream != null) {
-				fileInputStream.close();
+
+		private void onRead(final long length)
+		{
+			mRead += length;
+			final int percent = (int) Math.min(mRead * 100 / mSize, 100);
+			if (percent != mLastPercent) {
+				mLastPercent = percent;
+				mProgressListener.onProgress(percent);
 			}
-		} catch (final IOException e) {
-			Lg.ex(e, "Exception during fileInputStream.close()");
 		}
-		try {
-			if (inputStream != null) {
-				inputStream.close();
-			}
-		} catch (final IOException e) {
-			Lg.ex(e, "Exception during inputStream.close()");
+	}
+
+	private static void writeAscii(final OutputStream outputStream, final String string) throws IOException
+	{
+		outputStream.write(string.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	// returns null on success
+	static RetryPolicy.Failure postFile(final File file, final String uploadFileName, final LogUploadQueue.ProgressListener progressListener)
+	{
+		final HttpsURLConnection connection = HttpsPost.createConnection(URL_PATH, true);
+		if (connection == null) {
+			return RetryPolicy.Failure.CLIENT_ERROR;
 		}
+
+		// without chunked streaming HttpURLConnection buffers the whole body in memory before sending it
+		connection.setChunkedStreamingMode(TRANSFER_CHUNK_SIZE);
+
 		try {
-			if (responseStream != null) {
-				responseStream.close();
+			try (final OutputStream outputStream = new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE);
+				 final InputStream inputStream = new ProgressInputStream(file, progressListener)) {
+				writeAscii(outputStream, TWO_HYPHENS + HttpsPost.DATA_BOUNDARY + LINE_END);
+				writeAscii(outputStream, "Content-Disposition: form-data; name=\"file\";filename=\""
+						+ uploadFileName + '"' + LINE_END);
+				writeAscii(outputStream, "Content-Type: application/gzip" + LINE_END);
+				writeAscii(outputStream, LINE_END);
+
+				Streams.copy(inputStream, outputStream, BUFFER_SIZE);
+
+				writeAscii(outputStream, LINE_END);
+				writeAscii(outputStream, TWO_HYPHENS + HttpsPost.DATA_BOUNDARY + TWO_HYPHENS + LINE_END);
+			}
+
+			final int responseCode = connection.getResponseCode();
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				HttpsPost.drainAndClose(connection.getErrorStream());
+				Lg.w("posting file failed with error code ", responseCode, " and message ", connection.getResponseMessage());
+				return RetryPolicy.classify(responseCode);
+			}
+
+			try (final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+				final String response = reader.readLine();
+				Lg.i("used CipherSuite: ", connection.getCipherSuite());
+				Lg.i("Response ", response);
+
+				return response != null && response.trim().matches("OK \\d*") ? null : RetryPolicy.Failure.PARSE;
 			}
 		} catch (final IOException e) {
-			Lg.ex(e, "Exception during responseStream.close()");
+			Lg.ex(e, "IOException during postFile");
+			return RetryPolicy.classify(e);
 		}
-
-		return result;
 	}
 
 	public UploadLogFile(final Context context)
@@ -174,7 +207,9 @@ public final class UploadLogFile
 
 		mProgressDialog = new ProgressDialog(mContext);
 		mProgressDialog.setMessage(mContext.getString(R.string.upload_log_file_progress));
-		mProgressDialog.setIndeterminate(true);
+		mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		mProgressDialog.setIndeterminate(false);
+		mProgressDialog.setMax(100);
 		mProgressDialog.setCancelable(false);
 	}
 
@@ -185,23 +220,55 @@ public final class UploadLogFile
 		}
 	}
 
-	private static PostResult recordAndUploadLogFile(final File logFile)
+	private static String recordLogFile(final File logFile)
 	{
 		deleteFile(logFile);
 
 		try {
-			//noinspection UseOfProcessBuilder
-			final Process p = new ProcessBuilder("logcat", "-d", "-v", "threadtime", "-f", logFile.getAbsolutePath()).start();
-			p.waitFor();
-			return postFile(logFile);
+			if (LogSink.isInitialized()) {
+				try (final FileOutputStream outputStream = new FileOutputStream(logFile)) {
+					LogSink.copyTo(outputStream);
+					appendCallQualityHistory(outputStream);
+					appendStartupTrace(outputStream);
+				}
+			} else {
+				//noinspection UseOfProcessBuilder
+				final Process p = new ProcessBuilder("logcat", "-d", "-v", "threadtime", "-f", logFile.getAbsolutePath()).start();
+				p.waitFor();
+			}
+			return null;
+		} catch (final FileNotFoundException e) {
+			Lg.ex(e, "FileNotFoundException during log file creation");
+			deleteFile(logFile);
+			return "Creating log file failed";
 		} catch (final IOException | InterruptedException e) {
 			Lg.ex(e, "Exception during log file creation");
-			return new PostResult(false, "Log file creation failed");
-		} finally {
 			deleteFile(logFile);
+			return "Log file creation failed";
 		}
 	}
 
+	private static void appendCallQualityHistory(final OutputStream outputStream) throws IOException
+	{
+		final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+		writer.write("\ncall quality history:\n");
+		CallQualityHistory.exportTo(writer, CALL_QUALITY_HISTORY_CALLS);
+	}
+
+	private static void appendStartupTrace(final OutputStream outputStream) throws IOException
+	{
+		final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+		writer.write("\nstartup trace:\n");
+		Tracer.exportSummary(writer);
+		writer.write("\nstartup trace in chrome trace event format:\n");
+		Tracer.exportTrace(writer);
+	}
+
+	private boolean isContextGone()
+	{
+		return mContext instanceof Activity && (((Activity) mContext).isFinishing() || ((Activity) mContext).isDestroyed());
+	}
+
 	public void upload(final String fileName)
 	{
 		if (mContext == null) {
@@ -213,33 +280,85 @@ public final class UploadLogFile
 		Lg.i("simlar version=", Version.getVersionName(mContext),
 				" on device: ", Build.MANUFACTURER, " ", Build.MODEL, " (", Build.DEVICE, ") with android version=", Build.VERSION.RELEASE);
 
-		Executors.newSingleThreadExecutor().execute(() -> {
-			final PostResult result = recordAndUploadLogFile(new File(mContext.getCacheDir(), fileName));
-
-			new Handler(Looper.getMainLooper()).post(() -> {
-				mProgressDialog.dismiss();
-				if (!result.success) {
-					Lg.e("aborting uploading log file: ", result.errorMessage);
-					new AlertDialog.Builder(mContext)
-							.setTitle(R.string.main_activity_alert_uploading_log_file_failed_title)
-							.setMessage(mContext.getString(R.string.main_activity_alert_uploading_log_file_failed_text) + ": " + result.errorMessage)
-							.create().show();
-					return;
+		Scheduler.logStatistics();
+		mProgressDialog.show();
+		final Handler handler = new Handler(Looper.getMainLooper());
+		final String uploadFileName = fileName + LogUploadQueue.GZIP_SUFFIX;
+		// only weakly referenced by the queue, this object keeps it alive until destroy()
+		mListener = new LogUploadQueue.Listener()
+		{
+			@Override
+			public void onProgress(final String name, final int percent)
+			{
+				if (uploadFileName.equals(name)) {
+					handler.post(() -> mProgressDialog.setProgress(percent));
 				}
+			}
 
-				Lg.i("sending email for logfile: ", result.fileName);
-
-				final Intent sendIntent = new Intent(Intent.ACTION_SEND);
-				sendIntent.setType("message/rfc822");
-				sendIntent.putExtra(Intent.EXTRA_EMAIL, new String[] { EMAIL_ADDRESS });
-				sendIntent.putExtra(Intent.EXTRA_SUBJECT, EMAIL_SUBJECT + result.fileName);
-				sendIntent.putExtra(Intent.EXTRA_TEXT, EMAIL_TEXT + UPLOAD_SFTP_LINK + result.fileName);
-				try {
-					mContext.startActivity(Intent.createChooser(sendIntent, mContext.getString(R.string.upload_log_file_send_email_to_developer)));
-				} catch (final ActivityNotFoundException e) {
-					Lg.ex(e, "ActivityNotFoundException chooser_send_email");
+			@Override
+			public void onFinished(final String name, final boolean success)
+			{
+				if (uploadFileName.equals(name)) {
+					onUploadFinished(handler, success
+							? new PostResult(true, uploadFileName)
+							: new PostResult(false, "Posting log file failed, it will be retried in the background"));
 				}
-			});
+			}
+		};
+		LogUploadQueue.setListener(mListener);
+
+		Scheduler.execute(Scheduler.Pool.DISK, Scheduler.Priority.USER_INTERACTIVE, () -> {
+			final File logFile = new File(mContext.getCacheDir(), fileName);
+			final String errorMessage = recordLogFile(logFile);
+			if (errorMessage != null) {
+				onUploadFinished(handler, new PostResult(false, errorMessage));
+				return;
+			}
+
+			LogUploadQueue.add(logFile, uploadFileName);
+		});
+	}
+
+	/// has to be called when the activity showing the upload is destroyed
+	public void destroy()
+	{
+		LogUploadQueue.removeListener(mListener);
+		mListener = null;
+		mProgressDialog.dismiss();
+	}
+
+	private void onUploadFinished(final Handler handler, final PostResult result)
+	{
+		handler.post(() -> {
+			LogUploadQueue.removeListener(mListener);
+			mListener = null;
+			if (isContextGone()) {
+				Lg.i("log file upload finished without ui: ", result.success);
+				return;
+			}
+
+			mProgressDialog.dismiss();
+			if (!result.success) {
+				Lg.e("aborting uploading log file: ", result.errorMessage);
+				new AlertDialog.Builder(mContext)
+						.setTitle(R.string.main_activity_alert_uploading_log_file_failed_title)
+						.setMessage(mContext.getString(R.string.main_activity_alert_uploading_log_file_failed_text) + ": " + result.errorMessage)
+						.create().show();
+				return;
+			}
+
+			Lg.i("sending email for logfile: ", result.fileName);
+
+			final Intent sendIntent = new Intent(Intent.ACTION_SEND);
+			sendIntent.setType("message/rfc822");
+			sendIntent.putExtra(Intent.EXTRA_EMAIL, new String[] { EMAIL_ADDRESS });
+			sendIntent.putExtra(Intent.EXTRA_SUBJECT, EMAIL_SUBJECT + result.fileName);
+			sendIntent.putExtra(Intent.EXTRA_TEXT, EMAIL_TEXT + UPLOAD_SFTP_LINK + result.fileName);
+			try {
+				mContext.startActivity(Intent.createChooser(sendIntent, mContext.getString(R.string.upload_log_file_send_email_to_developer)));
+			} catch (final ActivityNotFoundException e) {
+				Lg.ex(e, "ActivityNotFoundException chooser_send_email");
+			}
 		});
 	}
 }
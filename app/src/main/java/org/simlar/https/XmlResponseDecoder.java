@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import android.util.Xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import org.simlar.logging.Lg;
+
+/// Streams the xml responses of the simlar server to a handler element by element. The parser is reused per thread
+/// and attributes are looked up by name, so no intermediate structures get built. An error response
+/// (<error id="..." message="..."/>) is turned into a SimlarErrorException for all endpoints, an incomplete one is a parse failure.
+final class XmlResponseDecoder
+{
+	private static final ThreadLocal<XmlPullParser> mParsers = new ThreadLocal<>();
+	private static volatile ParserFactory mParserFactory = Xml::newPullParser;
+
+	private XmlResponseDecoder()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	/// view on the current start tag, only valid during the callback
+	static final class Element
+	{
+		private final XmlPullParser mParser;
+
+		private Element(final XmlPullParser parser)
+		{
+			mParser = parser;
+		}
+
+		String getName()
+		{
+			return mParser.getName();
+		}
+
+		boolean is(final String name)
+		{
+			return name.equalsIgnoreCase(mParser.getName());
+		}
+
+		/// value of the attribute with the given name ignoring case, null if missing
+		String getAttribute(final String name)
+		{
+			final int count = mParser.getAttributeCount();
+			for (int i = 0; i < count; ++i) {
+				if (name.equalsIgnoreCase(mParser.getAttributeName(i))) {
+					return mParser.getAttributeValue(i);
+				}
+			}
+			return null;
+		}
+
+		int getIntAttribute(final String name, final int defaultValue)
+		{
+			final String value = getAttribute(name);
+			if (value == null) {
+				return defaultValue;
+			}
+
+			try {
+				return Integer.parseInt(value);
+			} catch (final NumberFormatException e) {
+				Lg.w("attribute ", name, " is not a number: ", value);
+				return defaultValue;
+			}
+		}
+
+		boolean hasAttribute(final String name, final String value)
+		{
+			return value != null && value.equals(getAttribute(name));
+		}
+
+		String getPositionDescription()
+		{
+			return mParser.getPositionDescription();
+		}
+	}
+
+	interface ParserFactory
+	{
+		XmlPullParser create();
+	}
+
+	interface Handler<T>
+	{
+		/// called for the root element, returns false if it is not the expected response
+		boolean onRoot(final Element root);
+
+		/// called for every start tag below the root element
+		default void onElement(final Element element)
+		{
+		}
+
+		T getResult();
+	}
+
+	// e.g. for unit tests, which have no android xml parser; null restores the android one
+	static void setParserFactory(final ParserFactory parserFactory)
+	{
+		mParserFactory = parserFactory == null ? Xml::newPullParser : parserFactory;
+		mParsers.remove();
+	}
+
+	private static XmlPullParser getParser()
+	{
+		XmlPullParser parser = mParsers.get();
+		if (parser == null) {
+			parser = mParserFactory.create();
+			mParsers.set(parser);
+		}
+		return parser;
+	}
+
+	/// returns null if the response does not match the handler
+	static <T> T decode(final InputStream inputStream, final Handler<T> handler) throws XmlPullParserException, IOException, SimlarErrorException
+	{
+		final XmlPullParser parser = getParser();
+		try {
+			parser.setInput(inputStream, null);
+			parser.nextTag();
+
+			final Element element = new Element(parser);
+			if (element.is("error")) {
+				final SimlarErrorException exception = createSimlarErrorException(element);
+				if (exception == null) {
+					Lg.e("unable to parse error response: ", parser.getPositionDescription());
+					return null;
+				}
+				throw exception;
+			}
+
+			if (!handler.onRoot(element)) {
+				Lg.e("unable to parse response: ", parser.getPositionDescription());
+				return null;
+			}
+
+			final int rootDepth = parser.getDepth();
+			int eventType;
+			while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG && parser.getDepth() > rootDepth) {
+					handler.onElement(element);
+				}
+			}
+
+			return handler.getResult();
+		} finally {
+			releaseInput(parser);
+		}
+	}
+
+	/// returns null if the error response is incomplete, this is the only place server errors are logged
+	private static SimlarErrorException createSimlarErrorException(final Element element)
+	{
+		final String id = element.getAttribute("id");
+		final String message = element.getAttribute("message");
+		if (id == null || message == null) {
+			return null;
+		}
+
+		try {
+			final SimlarErrorException exception = new SimlarErrorException(Integer.parseInt(id), message);
+			Lg.e("server returned error ", exception.getId(), ": ", message);
+			return exception;
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+
+	// do not keep a reference to the stream
+	private static void releaseInput(final XmlPullParser parser)
+	{
+		try {
+			parser.setInput((Reader) null);
+		} catch (final XmlPullParserException e) {
+			Lg.ex(e, "XmlPullParserException releasing input");
+			mParsers.remove();
+		}
+	}
+
+	/// decodes the response, logs parse errors and closes the stream, returns null on failures
+	static <T> T decodeAndClose(final InputStream inputStream, final Handler<T> handler) throws SimlarErrorException
+	{
+		try {
+			return decode(inputStream, handler);
+		} catch (final XmlPullParserException e) {
+			Lg.ex(e, "parsing xml failed");
+			return null;
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException in InputStream of HttpsPost");
+			return null;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (final IOException e) {
+				Lg.ex(e, "IOException during close");
+			}
+		}
+	}
+}
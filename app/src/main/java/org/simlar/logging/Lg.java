@@ -27,6 +27,8 @@ import androidx.annotation.NonNull;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.simlar.utils.Util;
 
@@ -35,7 +37,15 @@ public final class Lg
 	private static final int TAG_SIZE_MAX = 23; // android prohibits tags greater than 23 but changing it for debugging works
 	private static final int LOG_LEVEL_NORMAL = Log.WARN;
 	private static final int LOG_LEVEL_DEBUG = Log.DEBUG;
+	private static final String DEFAULT_TAG = createEqualSizedTag("(", "simlar", ")");
+	private static final int CALLER_STACK_INDEX = 3; // createCallerTag, println, public log function, caller
 	private static volatile int mLevel = LOG_LEVEL_NORMAL;
+	private static volatile boolean mCallerTagging = true;
+	private static volatile LogSink mSink = null;
+	private static final Printer DEFAULT_PRINTER = Log::println;
+	private static volatile Printer mPrinter = DEFAULT_PRINTER;
+	private static final Map<StackTraceElement, String> mCallerTags = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, Boolean> mAnonymizedClasses = new ConcurrentHashMap<>();
 
 	private Lg()
 	{
@@ -45,6 +55,18 @@ public final class Lg
 	@Retention(RetentionPolicy.RUNTIME)
 	public @interface Anonymize {}
 
+	// only evaluated if the log level is enabled
+	@FunctionalInterface
+	public interface MessageParts
+	{
+		Object[] get();
+	}
+
+	interface Printer
+	{
+		void println(final int priority, final String tag, final String message);
+	}
+
 	public static void log(final int priority, final String tagPrefix, final String tag, final Object... messageParts)
 	{
 		if (priority < mLevel) {
@@ -54,16 +76,55 @@ public final class Lg
 		println(priority, createEqualSizedTag(tagPrefix, tag, null), null, messageParts);
 	}
 
+	public static boolean isLoggable(final int priority)
+	{
+		return priority >= mLevel;
+	}
+
+	// has to be called directly by the public log functions, as it takes the caller from the stack
 	private static void println(final int priority, final Throwable exception, final Object... messageParts)
 	{
 		if (priority < mLevel) {
 			return;
 		}
 
-		final StackTraceElement stackTraceElement = Thread.currentThread().getStackTrace()[4];
-		final String fileName = stackTraceElement.getFileName() + ':' + stackTraceElement.getLineNumber();
+		println(priority, createCallerTag(), exception, messageParts);
+	}
+
+	private static String createCallerTag()
+	{
+		if (!mCallerTagging) {
+			return DEFAULT_TAG;
+		}
+
+		// a throwable's stack trace is a lot cheaper than the one of Thread.currentThread()
+		final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+		if (stackTrace.length <= CALLER_STACK_INDEX) {
+			return DEFAULT_TAG;
+		}
 
-		println(priority, createEqualSizedTag("(", fileName, ")"), exception, messageParts);
+		final StackTraceElement stackTraceElement = stackTrace[CALLER_STACK_INDEX];
+		final String cachedTag = mCallerTags.get(stackTraceElement);
+		if (cachedTag != null) {
+			return cachedTag;
+		}
+
+		final String tag = createEqualSizedTag("(", stackTraceElement.getFileName() + ':' + stackTraceElement.getLineNumber(), ")");
+		mCallerTags.put(stackTraceElement, tag);
+		return tag;
+	}
+
+	private static boolean isAnonymized(final Object part)
+	{
+		final Class<?> clazz = part.getClass();
+		final Boolean cached = mAnonymizedClasses.get(clazz);
+		if (cached != null) {
+			return cached;
+		}
+
+		final boolean anonymized = clazz.isAnnotationPresent(Anonymize.class);
+		mAnonymizedClasses.put(clazz, anonymized);
+		return anonymized;
 	}
 
 	@SuppressWarnings("LogConditional")
@@ -72,7 +133,7 @@ public final class Lg
 		final StringBuilder message = new StringBuilder();
 		if (messageParts != null) {
 			for (final Object part : messageParts) {
-				if (part != null && part.getClass().isAnnotationPresent(Anonymize.class)) {
+				if (part != null && isAnonymized(part)) {
 					message.append(anonymize(part.toString()));
 				} else {
 					message.append(part);
@@ -86,7 +147,13 @@ public final class Lg
 					.append(Log.getStackTraceString(exception));
 		}
 
-		Log.println(priority, tag, message.toString());
+		final LogSink sink = mSink;
+		if (sink != null) {
+			sink.offer(priority, tag, message.toString());
+			return;
+		}
+
+		mPrinter.println(priority, tag, message.toString());
 	}
 
 	private static String createEqualSizedTag(final String prefix, final String tag, final String postfix)
@@ -155,26 +222,199 @@ public final class Lg
 		setDebugMode(debugMode);
 	}
 
+	// once set, log lines are written asynchronously by the sink
+	static void setSink(final LogSink sink)
+	{
+		mSink = sink;
+	}
+
+	// e.g. to capture log lines in tests, null restores the default
+	static void setPrinter(final Printer printer)
+	{
+		mPrinter = printer != null ? printer : DEFAULT_PRINTER;
+	}
+
 	public static void setDebugMode(final boolean enabled)
 	{
 		mLevel = enabled ? LOG_LEVEL_DEBUG : LOG_LEVEL_NORMAL;
 	}
 
+	// e.g. to test verbose logging
+	static void setLevel(final int level)
+	{
+		mLevel = level;
+	}
+
 	public static boolean isDebugModeEnabled()
 	{
 		return mLevel < LOG_LEVEL_NORMAL;
 	}
 
+	// without caller tagging all lines share one tag, which saves taking a stack trace for each line
+	public static void setCallerTagging(final boolean enabled)
+	{
+		mCallerTagging = enabled;
+	}
+
+	// The overloads with a fixed number of parameters do not allocate a varargs array if the level is disabled,
+	// the ones with a primitive second parameter do not box it either. Lines with more parameters should check isLoggable().
+	public static void v(final Object messagePart)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messagePart);
+		}
+	}
+
+	public static void v(final Object messagePart1, final Object messagePart2)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void v(final Object messagePart1, final long messagePart2)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void v(final Object messagePart1, final float messagePart2)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void v(final Object messagePart1, final double messagePart2)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void v(final Object messagePart1, final boolean messagePart2)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void v(final MessageParts messageParts)
+	{
+		if (Log.VERBOSE >= mLevel) {
+			println(Log.VERBOSE, null, messageParts.get());
+		}
+	}
+
 	public static void v(final Object... messageParts)
 	{
 		println(Log.VERBOSE, null, messageParts);
 	}
 
+	public static void d(final Object messagePart)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messagePart);
+		}
+	}
+
+	public static void d(final Object messagePart1, final Object messagePart2)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void d(final Object messagePart1, final long messagePart2)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void d(final Object messagePart1, final float messagePart2)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void d(final Object messagePart1, final double messagePart2)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void d(final Object messagePart1, final boolean messagePart2)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void d(final MessageParts messageParts)
+	{
+		if (Log.DEBUG >= mLevel) {
+			println(Log.DEBUG, null, messageParts.get());
+		}
+	}
+
 	public static void d(final Object... messageParts)
 	{
 		println(Log.DEBUG, null, messageParts);
 	}
 
+	public static void i(final Object messagePart)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messagePart);
+		}
+	}
+
+	public static void i(final Object messagePart1, final Object messagePart2)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void i(final Object messagePart1, final long messagePart2)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void i(final Object messagePart1, final float messagePart2)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void i(final Object messagePart1, final double messagePart2)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void i(final Object messagePart1, final boolean messagePart2)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messagePart1, messagePart2);
+		}
+	}
+
+	public static void i(final MessageParts messageParts)
+	{
+		if (Log.INFO >= mLevel) {
+			println(Log.INFO, null, messageParts.get());
+		}
+	}
+
 	public static void i(final Object... messageParts)
 	{
 		println(Log.INFO, null, messageParts);
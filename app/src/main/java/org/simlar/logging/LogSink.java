@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.logging;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.simlar.utils.BufferPool;
+
+/// Collects log lines in a lock-free ring buffer and writes them on a background thread to logcat and to
+/// rotating memory-mapped files. Producers never block: if the buffer is under pressure, low priority lines
+/// are dropped. Errors and uncaught exceptions are written synchronously, so that they are not lost in a crash.
+public final class LogSink
+{
+	private static final int CAPACITY = 2048; // has to be a power of two
+	private static final int MASK = CAPACITY - 1;
+	private static final int WAKE_UP_THRESHOLD = CAPACITY / 4;
+	private static final long MAX_QUEUED_CHARS = 512 * 1024;
+	private static final int MIN_PRIORITY_UNDER_PRESSURE = Log.INFO;
+	private static final int MIN_PRIORITY_SYNCHRONOUS = Log.ERROR;
+	private static final long FLUSH_INTERVAL_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(200);
+	private static final int FILE_SIZE = 1024 * 1024;
+	private static final int MAX_FILES = 4;
+	private static final String FILE_PREFIX = "simlar_";
+	private static final String FILE_SUFFIX = ".log";
+
+	private static volatile LogSink mInstance = null;
+
+	private final AtomicReferenceArray<Line> mSlots = new AtomicReferenceArray<>(CAPACITY);
+	private final AtomicLong mTail = new AtomicLong();
+	private final AtomicLong mHead = new AtomicLong();
+	private final AtomicLong mQueuedChars = new AtomicLong();
+	private final AtomicLong mDroppedLines = new AtomicLong();
+	private final File mDirectory;
+	private final int mPid = Process.myPid();
+	private final SimpleDateFormat mDateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+	private final Date mDate = new Date();
+	private final Thread mWriter;
+	private int mFileIndex;
+	private MappedByteBuffer mBuffer = null;
+
+	private static final class Line
+	{
+		final long timestamp;
+		final int tid;
+		final int priority;
+		final String tag;
+		final String message;
+
+		Line(final int priority, final String tag, final String message)
+		{
+			this.timestamp = System.currentTimeMillis();
+			this.tid = Process.myTid();
+			this.priority = priority;
+			this.tag = tag;
+			this.message = message;
+		}
+
+		int size()
+		{
+			return tag.length() + message.length();
+		}
+	}
+
+	private LogSink(final File directory)
+	{
+		mDirectory = directory;
+		final List<File> files = listLogFiles(directory);
+		mFileIndex = files.isEmpty() ? 0 : getFileIndex(files.get(files.size() - 1)) + 1;
+		mWriter = new Thread(this::run, "simlar-log-writer");
+		mWriter.setDaemon(true);
+	}
+
+	public static void init(final String directoryName)
+	{
+		if (mInstance != null) {
+			Lg.i("log sink already inited => aborting");
+			return;
+		}
+
+		final File directory = new File(directoryName);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			Lg.e("failed to create log directory: ", directoryName);
+			return;
+		}
+
+		final LogSink sink = new LogSink(directory);
+		sink.mWriter.start();
+		mInstance = sink;
+		Lg.setSink(sink);
+		sink.installUncaughtExceptionHandler();
+	}
+
+	private void installUncaughtExceptionHandler()
+	{
+		final Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler((thread, exception) -> {
+			try {
+				Lg.ex(exception, "uncaught exception in thread: ", thread.getName());
+				drain();
+			} finally {
+				if (previousHandler != null) {
+					previousHandler.uncaughtException(thread, exception);
+				}
+			}
+		});
+	}
+
+	/// returns false, if the line has been dropped
+	boolean offer(final int priority, final String tag, final String message)
+	{
+		final int size = tag.length() + message.length();
+		final long queuedChars = mQueuedChars.get();
+		if (queuedChars + size > MAX_QUEUED_CHARS ||
+				(priority < MIN_PRIORITY_UNDER_PRESSURE && queuedChars > MAX_QUEUED_CHARS / 2)) {
+			mDroppedLines.incrementAndGet();
+			return false;
+		}
+
+		final Line line = new Line(priority, tag, message);
+		while (true) {
+			final long tail = mTail.get();
+			final long queued = tail - mHead.get();
+			if (queued >= CAPACITY ||
+					(priority < MIN_PRIORITY_UNDER_PRESSURE && queued >= CAPACITY / 2)) {
+				mDroppedLines.incrementAndGet();
+				return false;
+			}
+
+			if (mTail.compareAndSet(tail, tail + 1)) {
+				mQueuedChars.addAndGet(size);
+				mSlots.lazySet((int) (tail & MASK), line);
+				if (priority >= MIN_PRIORITY_SYNCHRONOUS) {
+					// an error often comes right before a crash, which would lose the lines still queued
+					drain(tail + 1);
+				} else if (queued + 1 == WAKE_UP_THRESHOLD) {
+					LockSupport.unpark(mWriter);
+				}
+				return true;
+			}
+		}
+	}
+
+	private void run()
+	{
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		//noinspection InfiniteLoopStatement
+		while (true) {
+			drain();
+			LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOSECONDS);
+		}
+	}
+
+	private void drain()
+	{
+		drain(0);
+	}
+
+	// the lock makes sure there is only one consumer, the writer thread and an export may drain concurrently
+	// lines before position are waited for, if their producer has not published them, yet
+	private synchronized void drain(final long position)
+	{
+		final long dropped = mDroppedLines.getAndSet(0);
+		if (dropped > 0) {
+			write(new Line(Log.WARN, "LogSink", "dropped " + dropped + " log lines"));
+		}
+
+		long head = mHead.get();
+		while (true) {
+			final int index = (int) (head & MASK);
+			final Line line = mSlots.get(index);
+			if (line == null) {
+				// either empty or the producer has not published the line, yet
+				if (head >= position) {
+					return;
+				}
+				Thread.yield();
+				continue;
+			}
+
+			mSlots.lazySet(index, null);
+			++head;
+			mHead.lazySet(head);
+			mQueuedChars.addAndGet(-line.size());
+
+			write(line);
+		}
+	}
+
+	@SuppressWarnings("LogConditional")
+	private void write(final Line line)
+	{
+		Log.println(line.priority, line.tag, line.message);
+
+		mDate.setTime(line.timestamp);
+		final String formatted = mDateFormat.format(mDate) + ' ' + mPid + ' ' + line.tid + ' ' +
+				priorityToChar(line.priority) + ' ' + line.tag + ": " + line.message + '\n';
+		final byte[] bytes = formatted.getBytes(StandardCharsets.UTF_8);
+
+		try {
+			if (mBuffer == null || mBuffer.remaining() < bytes.length) {
+				rotate();
+			}
+			mBuffer.put(bytes, 0, Math.min(bytes.length, mBuffer.remaining()));
+		} catch (final IOException e) {
+			mBuffer = null;
+			Log.e("LogSink", "IOException writing log file", e);
+		}
+	}
+
+	private void rotate() throws IOException
+	{
+		final File file = new File(mDirectory, FILE_PREFIX + mFileIndex + FILE_SUFFIX);
+		++mFileIndex;
+
+		// the file is filled with zeros, so readers stop at the first zero byte
+		try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength(FILE_SIZE);
+			mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+		}
+
+		final List<File> files = listLogFiles(mDirectory);
+		for (int i = 0; i < files.size() - MAX_FILES; ++i) {
+			if (!files.get(i).delete()) {
+				Log.w("LogSink", "failed to delete log file: " + files.get(i).getName());
+			}
+		}
+	}
+
+	private static char priorityToChar(final int priority)
+	{
+		return switch (priority) {
+			case Log.VERBOSE -> 'V';
+			case Log.DEBUG -> 'D';
+			case Log.INFO -> 'I';
+			case Log.WARN -> 'W';
+			case Log.ERROR -> 'E';
+			default -> 'A';
+		};
+	}
+
+	private static int getFileIndex(final File file)
+	{
+		final String name = file.getName();
+		try {
+			return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static List<File> listLogFiles(final File directory)
+	{
+		final File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+		if (files == null) {
+			return new ArrayList<>();
+		}
+
+		final List<File> result = new ArrayList<>(Arrays.asList(files));
+		result.removeIf(file -> getFileIndex(file) < 0);
+		result.sort((lhs, rhs) -> Integer.compare(getFileIndex(lhs), getFileIndex(rhs)));
+		return result;
+	}
+
+	public static boolean isInitialized()
+	{
+		return mInstance != null;
+	}
+
+	/// writes all persisted log lines, oldest first, to outputStream
+	public static void copyTo(final OutputStream outputStream) throws IOException
+	{
+		final LogSink sink = mInstance;
+		if (sink == null) {
+			throw new IOException("log sink not initialized");
+		}
+
+		sink.drain();
+
+		final byte[] buffer = BufferPool.acquire(BufferPool.LARGE);
+		try {
+			for (final File file : listLogFiles(sink.mDirectory)) {
+				try (final FileInputStream inputStream = new FileInputStream(file)) {
+					int length;
+					while ((length = inputStream.read(buffer)) > 0) {
+						final int end = indexOfZero(buffer, length);
+						outputStream.write(buffer, 0, end);
+						if (end < length) {
+							break;
+						}
+					}
+				}
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+		outputStream.flush();
+	}
+
+	private static int indexOfZero(final byte[] buffer, final int length)
+	{
+		for (int i = 0; i < length; ++i) {
+			if (buffer[i] == 0) {
+				return i;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.logging;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/// Records named spans with monotonic timestamps into a ring buffer, e.g. to see where startup time goes.
+/// Once the buffer is full, new spans overwrite the oldest ones. The spans may be exported in the chrome trace event
+/// format, which perfetto and the systrace viewer open, or as a compact summary.
+public final class Tracer
+{
+	public static final int NO_SPAN = -1;
+
+	private static final int CAPACITY = 512;
+	private static final long NOT_SET = -1;
+	private static final int ENDED = -2;
+
+	private static int mNext = 0;
+	private static long mOverwritten = 0;
+	private static final int[] mSpans = new int[CAPACITY];
+	private static final String[] mNames = new String[CAPACITY];
+	private static final int[] mThreadIds = new int[CAPACITY];
+	private static final long[] mStarts = new long[CAPACITY];
+	private static final long[] mEnds = new long[CAPACITY];
+	private static final Map<String, Integer> mOnceSpans = new HashMap<>();
+
+	static {
+		Arrays.fill(mSpans, NO_SPAN);
+	}
+
+	private Tracer()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	private static final class Span
+	{
+		final String name;
+		final int threadId;
+		final long start;
+		final long end;
+
+		Span(final String name, final int threadId, final long start, final long end)
+		{
+			this.name = name;
+			this.threadId = threadId;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/// starts a span, which may be ended on any thread
+	public static synchronized int begin(final String name)
+	{
+		final int span = mNext;
+		mNext = (mNext + 1) & Integer.MAX_VALUE;
+
+		final int index = span % CAPACITY;
+		if (mSpans[index] != NO_SPAN) {
+			++mOverwritten;
+		}
+
+		mSpans[index] = span;
+		mNames[index] = name;
+		mThreadIds[index] = Process.myTid();
+		mStarts[index] = SystemClock.elapsedRealtimeNanos();
+		mEnds[index] = NOT_SET;
+		return span;
+	}
+
+	/// ends the span, unless it has been ended or overwritten already
+	public static synchronized void end(final int span)
+	{
+		if (span < 0) {
+			return;
+		}
+
+		final int index = span % CAPACITY;
+		if (mSpans[index] == span && mEnds[index] == NOT_SET) {
+			mEnds[index] = SystemClock.elapsedRealtimeNanos();
+		}
+	}
+
+	/// records a point in time
+	public static void instant(final String name)
+	{
+		end(begin(name));
+	}
+
+	/// starts a span, which is recorded only once per process, e.g. from the first launch of an activity
+	public static synchronized void beginOnce(final String name)
+	{
+		if (!mOnceSpans.containsKey(name)) {
+			mOnceSpans.put(name, begin(name));
+		}
+	}
+
+	public static synchronized void endOnce(final String name)
+	{
+		final Integer span = mOnceSpans.get(name);
+		if (span != null && span != ENDED) {
+			end(span);
+			mOnceSpans.put(name, ENDED);
+		}
+	}
+
+	// copies the spans from the oldest to the newest, so that exporting does not block tracing while writing
+	private static synchronized List<Span> copySpans()
+	{
+		final List<Span> spans = new ArrayList<>(CAPACITY);
+		final int oldest = mNext % CAPACITY;
+		for (int i = 0; i < CAPACITY; ++i) {
+			final int index = (oldest + i) % CAPACITY;
+			if (mSpans[index] != NO_SPAN) {
+				spans.add(new Span(mNames[index], mThreadIds[index], mStarts[index], mEnds[index]));
+			}
+		}
+		return spans;
+	}
+
+	private static synchronized long getOverwritten()
+	{
+		return mOverwritten;
+	}
+
+	private static long getFirstStart(final List<Span> spans)
+	{
+		long first = Long.MAX_VALUE;
+		for (final Span span : spans) {
+			first = Math.min(first, span.start);
+		}
+		return first;
+	}
+
+	private static String escape(final String string)
+	{
+		return string.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/// writes all spans as json in the chrome trace event format, unfinished spans are skipped
+	public static void exportTrace(final Writer writer) throws IOException
+	{
+		final int pid = Process.myPid();
+		writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		boolean first = true;
+		for (final Span span : copySpans()) {
+			if (span.end == NOT_SET) {
+				continue;
+			}
+
+			if (!first) {
+				writer.write(',');
+			}
+			first = false;
+
+			final long startMicroSeconds = span.start / 1000;
+			final long duration = (span.end - span.start) / 1000;
+			writer.write(duration == 0
+					? String.format(Locale.US, "\n{\"name\":\"%s\",\"ph\":\"i\",\"s\":\"p\",\"ts\":%d,\"pid\":%d,\"tid\":%d}",
+							escape(span.name), startMicroSeconds, pid, span.threadId)
+					: String.format(Locale.US, "\n{\"name\":\"%s\",\"ph\":\"X\",\"ts\":%d,\"dur\":%d,\"pid\":%d,\"tid\":%d}",
+							escape(span.name), startMicroSeconds, duration, pid, span.threadId));
+		}
+		writer.write("\n]}\n");
+		writer.flush();
+	}
+
+	/// writes one line per span with its start relative to the first span and its duration in milliseconds
+	public static void exportSummary(final Writer writer) throws IOException
+	{
+		final List<Span> spans = copySpans();
+		final long first = getFirstStart(spans);
+		for (final Span span : spans) {
+			writer.write(String.format(Locale.US, "+%.1f %s %s tid=%d\n", (span.start - first) / 1e6, span.name,
+					span.end == NOT_SET ? "unfinished" : String.format(Locale.US, "%.1fms", (span.end - span.start) / 1e6), span.threadId));
+		}
+
+		final long overwritten = getOverwritten();
+		if (overwritten > 0) {
+			writer.write("overwritten spans: " + overwritten + '\n');
+		}
+		writer.flush();
+	}
+}
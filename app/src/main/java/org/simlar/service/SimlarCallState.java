@@ -58,6 +58,24 @@ public final class SimlarCallState
 		ENDED
 	}
 
+	public SimlarCallState()
+	{
+	}
+
+	SimlarCallState(final SimlarCallState other)
+	{
+		mLinphoneCallState = other.mLinphoneCallState;
+		mGuiCallState = other.mGuiCallState;
+		mSimlarId = other.mSimlarId;
+		mContactName = other.mContactName;
+		mContactPhotoId = other.mContactPhotoId;
+		mCallEndReason = other.mCallEndReason;
+		mAuthenticationToken = other.mAuthenticationToken;
+		mAuthenticationTokenVerified = other.mAuthenticationTokenVerified;
+		mQuality = other.mQuality;
+		mCallStartTime = other.mCallStartTime;
+	}
+
 	private boolean updateCallEndReason(final CallEndReason reason)
 	{
 		// do not override existing reasons
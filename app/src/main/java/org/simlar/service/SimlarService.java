@@ -74,6 +74,7 @@ import org.simlar.helper.VideoState;
 import org.simlar.helper.Volumes;
 import org.simlar.helper.Volumes.MicrophoneStatus;
 import org.simlar.logging.Lg;
+import org.simlar.logging.Tracer;
 import org.simlar.service.SoundEffectManager.SoundEffectType;
 import org.simlar.service.liblinphone.LinphoneCallState;
 import org.simlar.service.liblinphone.LinphoneManager;
@@ -286,6 +287,8 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 	@SuppressLint("ForegroundServiceType")
 	private void handleStartup(final Intent intent)
 	{
+		final int span = Tracer.begin("SimlarService.handleStartup");
+
 		if (FlavourHelper.isGcmEnabled()) {
 			Lg.i("acquiring simlar wake lock");
 			acquireWakeLock();
@@ -306,10 +309,14 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 					} else {
 						mSimlarCallState.updateCallStateChanged(mSimlarIdToCall, LinphoneCallState.OUTGOING_INIT, CallEndReason.NONE);
 					}
+					SimlarStateStore.setSimlarCallState(mSimlarCallState);
 				}
 
 				// make sure we have a contact name for the CallActivity
-				ContactsProvider.getNameAndPhotoId(mSimlarIdToCall, this, mSimlarCallState::updateContactNameAndImage);
+				ContactsProvider.getNameAndPhotoId(mSimlarIdToCall, this, (name, photoId) -> {
+					mSimlarCallState.updateContactNameAndImage(name, photoId);
+					SimlarStateStore.setSimlarCallState(mSimlarCallState);
+				});
 			}
 		} else {
 			Lg.w("onStartCommand: with no intent");
@@ -332,14 +339,18 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		} else {
 			startForeground(NOTIFICATION_ID, createNotification());
 		}
+
+		Tracer.end(span);
 	}
 
 	@Override
 	public void onCreate()
 	{
 		Lg.i("onCreate");
+		final int span = Tracer.begin("SimlarService.onCreate");
 
 		mRunning = true;
+		SimlarStateStore.reset();
 
 		mVibratorManager = new VibratorManager(getApplicationContext());
 		mSoundEffectManager = new SoundEffectManager(getApplicationContext());
@@ -361,6 +372,8 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		ContactsProvider.preLoadContacts(this);
 
 		startLinphone();
+
+		Tracer.end(span);
 	}
 
 	private void startLinphone()
@@ -421,7 +434,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 
 		if (!mSimlarStatus.isConnectedToSipServer()) {
 			mSimlarCallState.connectingToSimlarServerTimedOut();
-			SimlarServiceBroadcast.sendSimlarCallStateChanged(this);
+			SimlarStateStore.setSimlarCallState(mSimlarCallState);
 		}
 		handleTerminate();
 
@@ -746,12 +759,12 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 
 		mSimlarStatus = status;
 
-		SimlarServiceBroadcast.sendSimlarStatusChanged(this);
+		SimlarStateStore.setSimlarStatus(status);
 
 		handlePendingCall();
 
 		if (mSimlarStatus == SimlarStatus.CONNECTING && mSimlarCallState.updateConnectingToServer()) {
-			SimlarServiceBroadcast.sendSimlarCallStateChanged(this);
+			SimlarStateStore.setSimlarCallState(mSimlarCallState);
 		}
 	}
 
@@ -780,7 +793,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 
 		if (simlarCallStateChanged) {
 			Lg.i("updated ", mSimlarCallState);
-			SimlarServiceBroadcast.sendSimlarCallStateChanged(this);
+			SimlarStateStore.setSimlarCallState(mSimlarCallState);
 		} else {
 			Lg.v("SimlarCallState staying the same: ", mSimlarCallState);
 		}
@@ -791,7 +804,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		}
 
 		Lg.d("CallConnectionDetails updated: ", mCallConnectionDetails);
-		SimlarServiceBroadcast.sendCallConnectionDetailsChanged(this);
+		SimlarStateStore.setCallConnectionDetails(mCallConnectionDetails);
 	}
 
 	@Override
@@ -841,6 +854,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 			notifySimlarStatusChanged(SimlarStatus.ONGOING_CALL);
 
 			mCallConnectionDetails = new CallConnectionDetails();
+			SimlarStateStore.setCallConnectionDetails(mCallConnectionDetails);
 
 			if (!FlavourHelper.isGcmEnabled()) {
 				Lg.i("acquiring simlar wake lock because of new call");
@@ -862,7 +876,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 			restoreAudioStreamRing();
 
 			if (mCallConnectionDetails.updateEndedCall()) {
-				SimlarServiceBroadcast.sendCallConnectionDetailsChanged(this);
+				SimlarStateStore.setCallConnectionDetails(mCallConnectionDetails);
 			}
 
 			if (oldCallStateRinging) {
@@ -896,7 +910,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 						Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP));
 			}
 
-			SimlarServiceBroadcast.sendSimlarCallStateChanged(this);
+			SimlarStateStore.setSimlarCallState(mSimlarCallState);
 		});
 	}
 
@@ -924,7 +938,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		mLinphoneManager.setMicrophoneStatus(MicrophoneStatus.ON);
 		mSoundEffectManager.stop(SoundEffectType.ENCRYPTION_HANDSHAKE);
 
-		SimlarServiceBroadcast.sendSimlarCallStateChanged(this);
+		SimlarStateStore.setSimlarCallState(mSimlarCallState);
 	}
 
 	@Override
@@ -936,14 +950,14 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 
 		mVideoState = videoState;
 		Lg.i("updated video state: ", videoState);
-		SimlarServiceBroadcast.sendVideoStateChanged(this, videoState);
+		SimlarStateStore.setVideoState(videoState);
 	}
 
 	@Override
 	public void onAudioOutputChanged(final AudioOutputType currentAudioOutputType, final Set<AudioOutputType> availableAudioOutputTypes)
 	{
 		Lg.i("onAudioOutputChanged: currentAudioOutputType=", currentAudioOutputType, " availableAudioOutputTypes=", TextUtils.join(",", availableAudioOutputTypes));
-		SimlarServiceBroadcast.sendAudioOutputChanged(this, currentAudioOutputType, availableAudioOutputTypes);
+		SimlarStateStore.setAudioOutput(currentAudioOutputType, availableAudioOutputTypes);
 	}
 
 	private void call(final String simlarId)
@@ -994,7 +1008,6 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 			return;
 		}
 		mGoingDown = true;
-		SimlarServiceBroadcast.sendSimlarStatusChanged(this);
 
 		if (mLinphoneManager != null && mSimlarStatus.isConnectedToSipServer()) {
 			mLinphoneManager.unregister();
@@ -1022,6 +1035,7 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		}
 
 		SimlarServiceBroadcast.sendServiceFinishes(this);
+		SimlarStateStore.logStatistics();
 
 		// make sure we remove the terminateChecker by removing all events
 		mHandler.removeCallbacksAndMessages(null);
@@ -1056,16 +1070,6 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		mLinphoneManager.verifyAuthenticationToken(mSimlarCallState.getAuthenticationToken(), verified);
 	}
 
-	public SimlarStatus getSimlarStatus()
-	{
-		return mSimlarStatus;
-	}
-
-	public SimlarCallState getSimlarCallState()
-	{
-		return mSimlarCallState;
-	}
-
 	private Volumes getVolumes()
 	{
 		if (mLinphoneManager == null) {
@@ -1192,11 +1196,6 @@ public final class SimlarService extends Service implements LinphoneManagerListe
 		mLinphoneManager.toggleCamera();
 	}
 
-	public CallConnectionDetails getCallConnectionDetails()
-	{
-		return mCallConnectionDetails;
-	}
-
 	public static boolean isRunning()
 	{
 		return mRunning;
@@ -27,11 +27,8 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.Set;
-
-import org.simlar.helper.VideoState;
 
+/// Events of the service, which are no state and therefore not published by SimlarStateStore.
 public final class SimlarServiceBroadcast implements Serializable
 {
 	@Serial
@@ -42,21 +39,14 @@ public final class SimlarServiceBroadcast implements Serializable
 
 	public enum Type
 	{
-		SIMLAR_STATUS,
-		SIMLAR_CALL_STATE,
-		CALL_CONNECTION_DETAILS,
-		VIDEO_STATE,
-		AUDIO_STATE,
 		SERVICE_FINISHES
 	}
 
 	private final Type mType;
-	private final Parameters mParameters;
 
-	private SimlarServiceBroadcast(final Type type, final Parameters parameters)
+	private SimlarServiceBroadcast(final Type type)
 	{
 		mType = type;
-		mParameters = parameters;
 	}
 
 	private void send(final Context context)
@@ -66,75 +56,13 @@ public final class SimlarServiceBroadcast implements Serializable
 		LocalBroadcastManager.getInstance(context).sendBroadcast(intent);
 	}
 
-	public interface Parameters extends Serializable
-	{
-	}
-
 	public Type getType()
 	{
 		return mType;
 	}
 
-	public Parameters getParameters()
-	{
-		return mParameters;
-	}
-
-	public static void sendSimlarStatusChanged(final Context context)
-	{
-		new SimlarServiceBroadcast(Type.SIMLAR_STATUS, null).send(context);
-	}
-
-	public static void sendSimlarCallStateChanged(final Context context)
-	{
-		new SimlarServiceBroadcast(Type.SIMLAR_CALL_STATE, null).send(context);
-	}
-
-	public static void sendCallConnectionDetailsChanged(final Context context)
-	{
-		new SimlarServiceBroadcast(Type.CALL_CONNECTION_DETAILS, null).send(context);
-	}
-
-	public static class VideoStateChanged implements Parameters
-	{
-		@Serial
-		private static final long serialVersionUID = 1;
-
-		public final VideoState videoState;
-
-		VideoStateChanged(final VideoState videoState)
-		{
-			this.videoState = videoState;
-		}
-	}
-
-	public static void sendVideoStateChanged(final Context context, final VideoState videoState)
-	{
-		new SimlarServiceBroadcast(Type.VIDEO_STATE, new VideoStateChanged(videoState)).send(context);
-	}
-
-	public static class AudioOutputChanged implements Parameters
-	{
-		@Serial
-		private static final long serialVersionUID = 1;
-
-		final AudioOutputType currentAudioOutputType;
-		final Set<AudioOutputType> availableAudioOutputTypes;
-
-		AudioOutputChanged(final AudioOutputType currentAudioOutputType, final Set<AudioOutputType> availableAudioOutputTypes)
-		{
-			this.currentAudioOutputType = currentAudioOutputType;
-			this.availableAudioOutputTypes = Collections.unmodifiableSet(availableAudioOutputTypes);
-		}
-	}
-
-	public static void sendAudioOutputChanged(final Context context, final AudioOutputType currentAudioOutputType, final Set<AudioOutputType> availableAudioOutputTypes)
-	{
-		new SimlarServiceBroadcast(Type.AUDIO_STATE, new AudioOutputChanged(currentAudioOutputType, availableAudioOutputTypes)).send(context);
-	}
-
 	public static void sendServiceFinishes(final Context context)
 	{
-		new SimlarServiceBroadcast(Type.SERVICE_FINISHES, null).send(context);
+		new SimlarServiceBroadcast(Type.SERVICE_FINISHES).send(context);
 	}
 }
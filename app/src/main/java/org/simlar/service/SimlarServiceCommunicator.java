@@ -44,6 +44,7 @@ public class SimlarServiceCommunicator
 	private Class<? extends AppCompatActivity> mActivity = null;
 	private final ServiceConnection mConnection = new SimlarServiceConnection();
 	private final BroadcastReceiver mReceiver = new SimlarServiceReceiver();
+	private final SimlarStateStore.Observer mStateObserver = new SimlarStateObserver();
 	private Context mContext = null;
 
 	private final class SimlarServiceConnection implements ServiceConnection
@@ -90,16 +91,7 @@ public class SimlarServiceCommunicator
 				return;
 			}
 
-			// NOTE: the app crashes if the cast fails but I want it this way
 			switch (fsb.getType()) {
-				case SIMLAR_STATUS -> onSimlarStatusChanged();
-				case SIMLAR_CALL_STATE -> onSimlarCallStateChanged();
-				case CALL_CONNECTION_DETAILS -> onCallConnectionDetailsChanged();
-				case VIDEO_STATE -> onVideoStateChanged(((SimlarServiceBroadcast.VideoStateChanged) fsb.getParameters()).videoState);
-				case AUDIO_STATE -> {
-					final SimlarServiceBroadcast.AudioOutputChanged audioOutputChanged = (SimlarServiceBroadcast.AudioOutputChanged) fsb.getParameters();
-					onAudioOutputChanged(audioOutputChanged.currentAudioOutputType, audioOutputChanged.availableAudioOutputTypes);
-				}
 				case SERVICE_FINISHES -> {
 					onServiceFinishes();
 					unregister();
@@ -109,6 +101,34 @@ public class SimlarServiceCommunicator
 		}
 	}
 
+	private final class SimlarStateObserver implements SimlarStateStore.Observer
+	{
+		@Override
+		public void onStateChanged(final SimlarStateStore.Snapshot snapshot, final Set<SimlarStateStore.Field> changedFields)
+		{
+			if (mService == null) {
+				Lg.v("skip state changes ", changedFields, " because no service bound");
+				return;
+			}
+
+			if (changedFields.contains(SimlarStateStore.Field.SIMLAR_STATUS)) {
+				onSimlarStatusChanged();
+			}
+			if (changedFields.contains(SimlarStateStore.Field.SIMLAR_CALL_STATE)) {
+				onSimlarCallStateChanged();
+			}
+			if (changedFields.contains(SimlarStateStore.Field.CALL_CONNECTION_DETAILS)) {
+				onCallConnectionDetailsChanged();
+			}
+			if (changedFields.contains(SimlarStateStore.Field.VIDEO_STATE)) {
+				onVideoStateChanged(snapshot.getVideoState());
+			}
+			if (changedFields.contains(SimlarStateStore.Field.AUDIO_OUTPUT)) {
+				onAudioOutputChanged(snapshot.getCurrentAudioOutputType(), snapshot.getAvailableAudioOutputTypes());
+			}
+		}
+	}
+
 	public final boolean register(final Context context, final Class<? extends AppCompatActivity> activity)
 	{
 		if (!SimlarService.isRunning()) {
@@ -139,6 +159,7 @@ public class SimlarServiceCommunicator
 		}
 		context.bindService(intent, mConnection, 0);
 		LocalBroadcastManager.getInstance(context).registerReceiver(mReceiver, new IntentFilter(SimlarServiceBroadcast.BROADCAST_NAME));
+		SimlarStateStore.subscribe(mStateObserver);
 	}
 
 	public final void unregister()
@@ -149,6 +170,7 @@ public class SimlarServiceCommunicator
 		}
 
 		LocalBroadcastManager.getInstance(mContext).unregisterReceiver(mReceiver);
+		SimlarStateStore.unsubscribe(mStateObserver);
 		if (mService != null && SimlarService.isRunning()) {
 			mContext.unbindService(mConnection);
 		}
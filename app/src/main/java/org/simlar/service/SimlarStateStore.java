@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.simlar.helper.CallConnectionDetails;
+import org.simlar.helper.VideoState;
+import org.simlar.logging.Lg;
+
+/// Holds an immutable snapshot of the service state the ui shows.
+///
+/// The service publishes every change here, observers get the current snapshot on subscribe and afterwards only
+/// the fields which changed. Changes are coalesced until the main thread delivers them, and deliveries are limited
+/// to one per minimum delivery interval.
+public final class SimlarStateStore
+{
+	private static final long DEFAULT_MIN_DELIVERY_INTERVAL_MILLISECONDS = 16; // about one frame
+
+	private static final Handler mHandler = new Handler(Looper.getMainLooper());
+	private static final List<Observer> mObservers = new CopyOnWriteArrayList<>();
+	private static final Object mLock = new Object();
+	private static final Set<Field> mChangedFields = EnumSet.noneOf(Field.class);
+	private static Snapshot mSnapshot = new Snapshot();
+	private static boolean mDeliveryScheduled = false;
+	private static long mLastDelivery = 0;
+	private static long mMinDeliveryInterval = DEFAULT_MIN_DELIVERY_INTERVAL_MILLISECONDS;
+	private static long mPublished = 0;
+	private static long mCoalesced = 0;
+	private static long mDelivered = 0;
+
+	public enum Field
+	{
+		SIMLAR_STATUS,
+		SIMLAR_CALL_STATE,
+		CALL_CONNECTION_DETAILS,
+		VIDEO_STATE,
+		AUDIO_OUTPUT
+	}
+
+	public interface Observer
+	{
+		void onStateChanged(final Snapshot snapshot, final Set<Field> changedFields);
+	}
+
+	public static final class Snapshot
+	{
+		private final SimlarStatus mSimlarStatus;
+		private final SimlarCallState mSimlarCallState;
+		private final CallConnectionDetails mCallConnectionDetails;
+		private final VideoState mVideoState;
+		private final AudioOutputType mCurrentAudioOutputType;
+		private final Set<AudioOutputType> mAvailableAudioOutputTypes;
+
+		Snapshot()
+		{
+			this(SimlarStatus.OFFLINE, new SimlarCallState(), new CallConnectionDetails(), VideoState.OFF, null, Collections.emptySet());
+		}
+
+		private Snapshot(final SimlarStatus simlarStatus, final SimlarCallState simlarCallState, final CallConnectionDetails callConnectionDetails,
+		                 final VideoState videoState, final AudioOutputType currentAudioOutputType, final Set<AudioOutputType> availableAudioOutputTypes)
+		{
+			mSimlarStatus = simlarStatus;
+			mSimlarCallState = simlarCallState;
+			mCallConnectionDetails = callConnectionDetails;
+			mVideoState = videoState;
+			mCurrentAudioOutputType = currentAudioOutputType;
+			mAvailableAudioOutputTypes = availableAudioOutputTypes;
+		}
+
+		public SimlarStatus getSimlarStatus()
+		{
+			return mSimlarStatus;
+		}
+
+		// SimlarCallState is mutable, so callers get their own copy
+		public SimlarCallState getSimlarCallState()
+		{
+			return new SimlarCallState(mSimlarCallState);
+		}
+
+		// CallConnectionDetails is mutable, so callers get their own copy
+		public CallConnectionDetails getCallConnectionDetails()
+		{
+			return new CallConnectionDetails(mCallConnectionDetails);
+		}
+
+		public VideoState getVideoState()
+		{
+			return mVideoState;
+		}
+
+		public AudioOutputType getCurrentAudioOutputType()
+		{
+			return mCurrentAudioOutputType;
+		}
+
+		public Set<AudioOutputType> getAvailableAudioOutputTypes()
+		{
+			return mAvailableAudioOutputTypes;
+		}
+	}
+
+	private SimlarStateStore()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	public static Snapshot getSnapshot()
+	{
+		synchronized (mLock) {
+			return mSnapshot;
+		}
+	}
+
+	public static void subscribe(final Observer observer)
+	{
+		if (mObservers.contains(observer)) {
+			return;
+		}
+
+		mObservers.add(observer);
+		mHandler.post(() -> {
+			if (mObservers.contains(observer)) {
+				observer.onStateChanged(getSnapshot(), Collections.unmodifiableSet(EnumSet.allOf(Field.class)));
+			}
+		});
+	}
+
+	public static void unsubscribe(final Observer observer)
+	{
+		mObservers.remove(observer);
+	}
+
+	static void setMinDeliveryInterval(final long milliSeconds)
+	{
+		synchronized (mLock) {
+			mMinDeliveryInterval = Math.max(milliSeconds, 0);
+		}
+	}
+
+	static void reset()
+	{
+		publish(new Snapshot(), EnumSet.allOf(Field.class));
+	}
+
+	static void setSimlarStatus(final SimlarStatus simlarStatus)
+	{
+		synchronized (mLock) {
+			if (mSnapshot.mSimlarStatus == simlarStatus) {
+				return;
+			}
+
+			publish(new Snapshot(simlarStatus, mSnapshot.mSimlarCallState, mSnapshot.mCallConnectionDetails,
+					mSnapshot.mVideoState, mSnapshot.mCurrentAudioOutputType, mSnapshot.mAvailableAudioOutputTypes), EnumSet.of(Field.SIMLAR_STATUS));
+		}
+	}
+
+	// the service only publishes its call state if it changed
+	static void setSimlarCallState(final SimlarCallState simlarCallState)
+	{
+		synchronized (mLock) {
+			publish(new Snapshot(mSnapshot.mSimlarStatus, new SimlarCallState(simlarCallState), mSnapshot.mCallConnectionDetails,
+					mSnapshot.mVideoState, mSnapshot.mCurrentAudioOutputType, mSnapshot.mAvailableAudioOutputTypes), EnumSet.of(Field.SIMLAR_CALL_STATE));
+		}
+	}
+
+	// the service only publishes its connection details if they changed
+	static void setCallConnectionDetails(final CallConnectionDetails callConnectionDetails)
+	{
+		synchronized (mLock) {
+			publish(new Snapshot(mSnapshot.mSimlarStatus, mSnapshot.mSimlarCallState, new CallConnectionDetails(callConnectionDetails),
+					mSnapshot.mVideoState, mSnapshot.mCurrentAudioOutputType, mSnapshot.mAvailableAudioOutputTypes), EnumSet.of(Field.CALL_CONNECTION_DETAILS));
+		}
+	}
+
+	static void setVideoState(final VideoState videoState)
+	{
+		synchronized (mLock) {
+			if (mSnapshot.mVideoState == videoState) {
+				return;
+			}
+
+			publish(new Snapshot(mSnapshot.mSimlarStatus, mSnapshot.mSimlarCallState, mSnapshot.mCallConnectionDetails,
+					videoState, mSnapshot.mCurrentAudioOutputType, mSnapshot.mAvailableAudioOutputTypes), EnumSet.of(Field.VIDEO_STATE));
+		}
+	}
+
+	static void setAudioOutput(final AudioOutputType currentAudioOutputType, final Set<AudioOutputType> availableAudioOutputTypes)
+	{
+		synchronized (mLock) {
+			if (mSnapshot.mCurrentAudioOutputType == currentAudioOutputType && mSnapshot.mAvailableAudioOutputTypes.equals(availableAudioOutputTypes)) {
+				return;
+			}
+
+			publish(new Snapshot(mSnapshot.mSimlarStatus, mSnapshot.mSimlarCallState, mSnapshot.mCallConnectionDetails,
+					mSnapshot.mVideoState, currentAudioOutputType, Collections.unmodifiableSet(new HashSet<>(availableAudioOutputTypes))),
+					EnumSet.of(Field.AUDIO_OUTPUT));
+		}
+	}
+
+	private static void publish(final Snapshot snapshot, final Set<Field> changedFields)
+	{
+		synchronized (mLock) {
+			mSnapshot = snapshot;
+			mChangedFields.addAll(changedFields);
+			++mPublished;
+
+			if (mDeliveryScheduled) {
+				++mCoalesced;
+				return;
+			}
+
+			mDeliveryScheduled = true;
+			final long delay = Math.max(mLastDelivery + mMinDeliveryInterval - SystemClock.uptimeMillis(), 0);
+			mHandler.postDelayed(SimlarStateStore::deliver, delay);
+		}
+	}
+
+	private static void deliver()
+	{
+		final Snapshot snapshot;
+		final Set<Field> changedFields;
+		synchronized (mLock) {
+			snapshot = mSnapshot;
+			changedFields = Collections.unmodifiableSet(EnumSet.copyOf(mChangedFields));
+			mChangedFields.clear();
+			mDeliveryScheduled = false;
+			mLastDelivery = SystemClock.uptimeMillis();
+			if (!changedFields.isEmpty()) {
+				++mDelivered;
+			}
+		}
+
+		if (changedFields.isEmpty()) {
+			return;
+		}
+
+		Lg.v("delivering changed fields: ", changedFields);
+		for (final Observer observer : mObservers) {
+			observer.onStateChanged(snapshot, changedFields);
+		}
+	}
+
+	static void logStatistics()
+	{
+		synchronized (mLock) {
+			Lg.i("SimlarStateStore: published=", mPublished, " coalesced=", mCoalesced, " delivered=", mDelivered);
+		}
+	}
+}
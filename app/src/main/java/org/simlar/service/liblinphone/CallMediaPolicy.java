@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import org.simlar.helper.NetworkType;
+
+/// Decides how much bandwidth a call may use based on the measured packet loss and round trip delay.
+/// Degrades quickly and recovers slowly, so the media limits do not oscillate. Only to be used from the linphone thread.
+final class CallMediaPolicy
+{
+	private static final long DEGRADE_DELAY_MILLISECONDS = 2000;
+	private static final long RECOVER_DELAY_MILLISECONDS = 10000;
+	private static final long RENEGOTIATION_INTERVAL_MILLISECONDS = 30000;
+
+	enum Level
+	{
+		// upload and download in kbit/s with 0 meaning unlimited, video definition name, video frame rate with 0 meaning default, opus bitrate in kbit/s
+		UNLIMITED(0, 0, null, 0, 0),
+		CONSTRAINED(1024, 1024, "vga", 20, 32),
+		CONGESTED(512, 512, "qvga", 15, 24),
+		AUDIO_FIRST(128, 128, "qcif", 5, 16);
+
+		final int uploadBandwidth;
+		final int downloadBandwidth;
+		final String videoDefinition;
+		final float videoFrameRate;
+		final int opusBitrate;
+
+		Level(final int uploadBandwidth, final int downloadBandwidth, final String videoDefinition, final float videoFrameRate, final int opusBitrate)
+		{
+			this.uploadBandwidth = uploadBandwidth;
+			this.downloadBandwidth = downloadBandwidth;
+			this.videoDefinition = videoDefinition;
+			this.videoFrameRate = videoFrameRate;
+			this.opusBitrate = opusBitrate;
+		}
+
+		boolean isWorseThan(final Level other)
+		{
+			return ordinal() > other.ordinal();
+		}
+	}
+
+	private Level mLevel = Level.UNLIMITED;
+	private Level mCandidate = Level.UNLIMITED;
+	private long mCandidateSince = -1;
+	private long mLastRenegotiation = Long.MIN_VALUE / 2;
+	private boolean mRenegotiate = false;
+
+	static Level classify(final NetworkType networkType, final int packetLoss, final int roundTripDelay)
+	{
+		// packet loss in per mille, round trip delay in ms; cellular links collapse sooner, so they get limited at a lower loss
+		final int loss = networkType.isMobile() ? packetLoss * 2 : packetLoss;
+		if (loss >= 100 || roundTripDelay >= 800) {
+			return Level.AUDIO_FIRST;
+		}
+		if (loss >= 50 || roundTripDelay >= 400) {
+			return Level.CONGESTED;
+		}
+		if (loss >= 20 || roundTripDelay >= 250) {
+			return Level.CONSTRAINED;
+		}
+		return Level.UNLIMITED;
+	}
+
+	/// returns the new level if it changed, null otherwise
+	Level evaluate(final long time, final NetworkType networkType, final int packetLoss, final int roundTripDelay)
+	{
+		final Level level = classify(networkType, packetLoss, roundTripDelay);
+		if (level == mLevel) {
+			mCandidate = mLevel;
+			mCandidateSince = -1;
+			return null;
+		}
+
+		if (level != mCandidate) {
+			mCandidate = level;
+			mCandidateSince = time;
+		}
+
+		final long delay = level.isWorseThan(mLevel) ? DEGRADE_DELAY_MILLISECONDS : RECOVER_DELAY_MILLISECONDS;
+		if (time - mCandidateSince < delay) {
+			return null;
+		}
+
+		// every renegotiation is a re-INVITE, so only do it for a degradation and not too often
+		mRenegotiate = level.isWorseThan(mLevel) && time - mLastRenegotiation >= RENEGOTIATION_INTERVAL_MILLISECONDS;
+		if (mRenegotiate) {
+			mLastRenegotiation = time;
+		}
+
+		mLevel = level;
+		mCandidateSince = -1;
+		return level;
+	}
+
+	/// whether the running call should be renegotiated for the level returned by the last evaluate(), otherwise the limits only apply locally
+	boolean shouldRenegotiate()
+	{
+		return mRenegotiate;
+	}
+
+	Level getLevel()
+	{
+		return mLevel;
+	}
+
+	void reset()
+	{
+		mLevel = Level.UNLIMITED;
+		mCandidate = Level.UNLIMITED;
+		mCandidateSince = -1;
+		mLastRenegotiation = Long.MIN_VALUE / 2;
+		mRenegotiate = false;
+	}
+}
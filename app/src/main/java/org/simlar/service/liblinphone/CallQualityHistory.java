@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.linphone.core.IceState;
+
+import org.simlar.helper.CallEndReason;
+import org.simlar.helper.FileHelper;
+import org.simlar.helper.FileHelper.NotInitedException;
+import org.simlar.helper.NetworkQuality;
+import org.simlar.helper.NetworkType;
+import org.simlar.logging.Lg;
+
+/// Append-only store of one fixed size binary record per call, in the order the calls ended.
+///
+/// Fixed size records allow reading the last calls or binary searching by time without an extra index.
+/// Contacts are only stored as keyed hash of their simlarId. The key is created randomly per installation and never
+/// leaves the device, so the hashes in a log upload can not be reversed by hashing all telephone numbers.
+public final class CallQualityHistory
+{
+	private static final int MAGIC = 0x53435148; // SCQH
+	private static final int FORMAT_VERSION = 2; // version 1 used unkeyed hashes
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 64;
+	private static final int CODEC_SIZE = 12;
+	private static final int MAX_RECORDS = 50000;
+	private static final String HASH_ALGORITHM = "HmacSHA256";
+	private static final int HASH_KEY_SIZE = 32;
+
+	private static Map<Long, ContactAggregate> mContactAggregates = null;
+	private static SecretKeySpec mHashKey = null;
+
+	public static final class Record
+	{
+		public final long startTime;
+		public final long simlarIdHash;
+		public final int durationSeconds;
+		public final CallEndReason endReason;
+		public final IceState iceState; // null if unknown
+		public final NetworkType networkType;
+		public final boolean video;
+		public final String codec;
+		public final int[] qualityCounts; // samples per NetworkQuality ordinal
+		public final int averageQuality; // in hundredths
+		public final int p95Jitter;
+		public final int p95RoundTripDelay;
+		public final int averagePacketLoss;
+
+		Record(final long startTime, final long simlarIdHash, final int durationSeconds, final CallEndReason endReason, final IceState iceState,
+		       final NetworkType networkType, final boolean video, final String codec, final int[] qualityCounts, final int averageQuality,
+		       final int p95Jitter, final int p95RoundTripDelay, final int averagePacketLoss)
+		{
+			this.startTime = startTime;
+			this.simlarIdHash = simlarIdHash;
+			this.durationSeconds = durationSeconds;
+			this.endReason = endReason;
+			this.iceState = iceState;
+			this.networkType = networkType;
+			this.video = video;
+			this.codec = codec;
+			this.qualityCounts = qualityCounts;
+			this.averageQuality = averageQuality;
+			this.p95Jitter = p95Jitter;
+			this.p95RoundTripDelay = p95RoundTripDelay;
+			this.averagePacketLoss = averagePacketLoss;
+		}
+
+		public NetworkQuality getPredominantQuality()
+		{
+			int maxIndex = NetworkQuality.UNKNOWN.ordinal();
+			for (int i = 0; i < qualityCounts.length; ++i) {
+				if (qualityCounts[i] > qualityCounts[maxIndex]) {
+					maxIndex = i;
+				}
+			}
+			return NetworkQuality.values()[maxIndex];
+		}
+
+		private void write(final ByteBuffer buffer)
+		{
+			buffer.putLong(startTime);
+			buffer.putLong(simlarIdHash);
+			buffer.putInt(durationSeconds);
+			buffer.put((byte) endReason.ordinal());
+			buffer.put((byte) (iceState == null ? -1 : iceState.ordinal()));
+			buffer.put((byte) networkType.ordinal());
+			buffer.put((byte) (video ? 1 : 0));
+
+			final byte[] codecBytes = new byte[CODEC_SIZE];
+			if (codec != null) {
+				final byte[] bytes = codec.getBytes(StandardCharsets.US_ASCII);
+				System.arraycopy(bytes, 0, codecBytes, 0, Math.min(bytes.length, CODEC_SIZE));
+			}
+			buffer.put(codecBytes);
+
+			for (final NetworkQuality quality : NetworkQuality.values()) {
+				buffer.putChar((char) Math.min(qualityCounts[quality.ordinal()], Character.MAX_VALUE));
+			}
+			buffer.putShort(toShort(averageQuality));
+			buffer.putShort(toShort(p95Jitter));
+			buffer.putShort(toShort(p95RoundTripDelay));
+			buffer.putShort(toShort(averagePacketLoss));
+
+			// reserved
+			while (buffer.position() % RECORD_SIZE != 0) {
+				buffer.put((byte) 0);
+			}
+		}
+
+		private static Record read(final ByteBuffer buffer)
+		{
+			final int start = buffer.position();
+			final long startTime = buffer.getLong();
+			final long simlarIdHash = buffer.getLong();
+			final int durationSeconds = buffer.getInt();
+			final int endReason = buffer.get();
+			final int iceState = buffer.get();
+			final NetworkType networkType = NetworkType.fromInt(buffer.get());
+			final boolean video = buffer.get() != 0;
+
+			final byte[] codecBytes = new byte[CODEC_SIZE];
+			buffer.get(codecBytes);
+			int codecLength = 0;
+			while (codecLength < CODEC_SIZE && codecBytes[codecLength] != 0) {
+				++codecLength;
+			}
+			final String codec = codecLength == 0 ? null : new String(codecBytes, 0, codecLength, StandardCharsets.US_ASCII);
+
+			final int[] qualityCounts = new int[NetworkQuality.values().length];
+			for (int i = 0; i < qualityCounts.length; ++i) {
+				qualityCounts[i] = buffer.getChar();
+			}
+			final int averageQuality = buffer.getShort();
+			final int p95Jitter = buffer.getShort();
+			final int p95RoundTripDelay = buffer.getShort();
+			final int averagePacketLoss = buffer.getShort();
+			buffer.position(start + RECORD_SIZE);
+
+			final CallEndReason[] endReasons = CallEndReason.values();
+			final IceState[] iceStates = IceState.values();
+			return new Record(startTime, simlarIdHash, durationSeconds,
+					endReason >= 0 && endReason < endReasons.length ? endReasons[endReason] : CallEndReason.NONE,
+					iceState >= 0 && iceState < iceStates.length ? iceStates[iceState] : null,
+					networkType, video, codec, qualityCounts, averageQuality, p95Jitter, p95RoundTripDelay, averagePacketLoss);
+		}
+
+		private static short toShort(final int value)
+		{
+			return (short) Math.max(Math.min(value, Short.MAX_VALUE), Short.MIN_VALUE);
+		}
+	}
+
+	public static final class ContactAggregate
+	{
+		private int mCalls = 0;
+		private long mDurationSeconds = 0;
+		private long mQualitySum = 0;
+		private int mPoorCalls = 0;
+		private long mLastCall = 0;
+
+		private void add(final Record record)
+		{
+			++mCalls;
+			mDurationSeconds += record.durationSeconds;
+			mQualitySum += record.averageQuality;
+			final NetworkQuality quality = record.getPredominantQuality();
+			if (quality == NetworkQuality.POOR || quality == NetworkQuality.VERY_POOR || quality == NetworkQuality.UNUSABLE) {
+				++mPoorCalls;
+			}
+			mLastCall = Math.max(mLastCall, record.startTime);
+		}
+
+		public int getCalls()
+		{
+			return mCalls;
+		}
+
+		public long getDurationSeconds()
+		{
+			return mDurationSeconds;
+		}
+
+		// in hundredths
+		public int getAverageQuality()
+		{
+			return mCalls == 0 ? 0 : (int) (mQualitySum / mCalls);
+		}
+
+		public int getPoorCalls()
+		{
+			return mPoorCalls;
+		}
+
+		public long getLastCall()
+		{
+			return mLastCall;
+		}
+	}
+
+	private CallQualityHistory()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	public static synchronized long hashSimlarId(final String simlarId)
+	{
+		if (simlarId == null) {
+			return 0;
+		}
+
+		try {
+			final Mac mac = Mac.getInstance(HASH_ALGORITHM);
+			mac.init(getHashKey());
+			return ByteBuffer.wrap(mac.doFinal(simlarId.getBytes(StandardCharsets.UTF_8))).getLong();
+		} catch (final NotInitedException | NoSuchAlgorithmException | InvalidKeyException e) {
+			Lg.ex(e, "Exception hashing simlarId");
+			return 0;
+		}
+	}
+
+	private static SecretKeySpec getHashKey() throws NotInitedException
+	{
+		if (mHashKey == null) {
+			mHashKey = new SecretKeySpec(readOrCreateHashKey(), HASH_ALGORITHM);
+		}
+		return mHashKey;
+	}
+
+	private static byte[] readOrCreateHashKey() throws NotInitedException
+	{
+		final File file = new File(FileHelper.getCallQualityHistoryKeyFileName());
+		try {
+			if (file.length() == HASH_KEY_SIZE) {
+				try (final DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+					final byte[] key = new byte[HASH_KEY_SIZE];
+					inputStream.readFully(key);
+					return key;
+				}
+			}
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException reading call quality history key");
+		}
+
+		final byte[] key = new byte[HASH_KEY_SIZE];
+		new SecureRandom().nextBytes(key);
+
+		final File tmpFile = new File(file.getPath() + ".tmp");
+		try (final FileOutputStream outputStream = new FileOutputStream(tmpFile)) {
+			outputStream.write(key);
+			outputStream.getFD().sync();
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException writing call quality history key");
+			return key;
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			Lg.w("failed to rename call quality history key");
+			return key;
+		}
+
+		Lg.i("created new call quality history key");
+		return key;
+	}
+
+	private static File getFile() throws NotInitedException
+	{
+		return new File(FileHelper.getCallQualityHistoryFileName());
+	}
+
+	private static ByteBuffer createHeader()
+	{
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.flip();
+		return header;
+	}
+
+	// returns the number of records or -1 if the file is missing or has an unknown format
+	private static long countRecords(final RandomAccessFile file) throws IOException
+	{
+		if (file.length() < HEADER_SIZE) {
+			return -1;
+		}
+
+		file.seek(0);
+		if (file.readInt() != MAGIC || file.readInt() != FORMAT_VERSION) {
+			return -1;
+		}
+
+		return (file.length() - HEADER_SIZE) / RECORD_SIZE;
+	}
+
+	static synchronized void append(final Record record)
+	{
+		try (final RandomAccessFile file = new RandomAccessFile(getFile(), "rw")) {
+			long records = countRecords(file);
+			if (records < 0) {
+				Lg.i("creating new call quality history");
+				file.setLength(0);
+				file.getChannel().write(createHeader(), 0);
+				records = 0;
+			}
+
+			final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+			record.write(buffer);
+			buffer.flip();
+			// a partially written record of a crash gets overwritten
+			file.getChannel().write(buffer, HEADER_SIZE + records * RECORD_SIZE);
+			file.setLength(HEADER_SIZE + (records + 1) * RECORD_SIZE);
+		} catch (final NotInitedException e) {
+			Lg.ex(e, "NotInitedException appending call quality record");
+			return;
+		} catch (final IOException e) {
+			Lg.ex(e, "IOException appending call quality record");
+			return;
+		}
+
+		if (mContactAggregates != null) {
+			getOrCreateAggregate(mContactAggregates, record.simlarIdHash).add(record);
+		}
+
+		compactIfNeeded();
+	}
+
+	private static ContactAggregate getOrCreateAggregate(final Map<Long, ContactAggregate> aggregates, final long simlarIdHash)
+	{
+		ContactAggregate aggregate = aggregates.get(simlarIdHash);
+		if (aggregate == null) {
+			aggregate = new ContactAggregate();
+			aggregates.put(simlarIdHash, aggregate);
+		}
+		return aggregate;
+	}
+
+	private static List<Record> readRecords(final RandomAccessFile file, final long from, final long to) throws IOException
+	{
+		final int count = (int) Math.max(to - from, 0);
+		final List<Record> records = new ArrayList<>(count);
+		if (count == 0) {
+			return records;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+		final long position = HEADER_SIZE + from * RECORD_SIZE;
+		while (buffer.hasRemaining() && file.getChannel().read(buffer, position + buffer.position()) > 0) {
+			// read until full
+		}
+		buffer.flip();
+		while (buffer.remaining() >= RECORD_SIZE) {
+			records.add(Record.read(buffer));
+		}
+		return records;
+	}
+
+	/// the last count calls, newest first
+	public static synchronized List<Record> getLastCalls(final int count)
+	{
+		try (final RandomAccessFile file = new RandomAccessFile(getFile(), "r")) {
+			final long records = countRecords(file);
+			if (records <= 0) {
+				return new ArrayList<>();
+			}
+
+			final List<Record> result = readRecords(file, Math.max(records - count, 0), records);
+			Collections.reverse(result);
+			return result;
+		} catch (final NotInitedException | IOException e) {
+			Lg.ex(e, "Exception reading last calls");
+			return Collections.emptyList();
+		}
+	}
+
+	/// calls started in [from, to), oldest first
+	public static synchronized List<Record> getCalls(final long from, final long to)
+	{
+		try (final RandomAccessFile file = new RandomAccessFile(getFile(), "r")) {
+			final long records = countRecords(file);
+			if (records <= 0) {
+				return Collections.emptyList();
+			}
+
+			return readRecords(file, lowerBound(file, records, from), lowerBound(file, records, to));
+		} catch (final NotInitedException | IOException e) {
+			Lg.ex(e, "Exception reading calls");
+			return Collections.emptyList();
+		}
+	}
+
+	// records are appended when a call ends, so they are sorted by start time apart from overlapping calls and clock changes
+	private static long lowerBound(final RandomAccessFile file, final long records, final long time) throws IOException
+	{
+		long low = 0;
+		long high = records;
+		while (low < high) {
+			final long middle = (low + high) >>> 1;
+			file.seek(HEADER_SIZE + middle * RECORD_SIZE);
+			if (file.readLong() < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	public static synchronized ContactAggregate getContactAggregate(final String simlarId)
+	{
+		if (mContactAggregates == null) {
+			mContactAggregates = readContactAggregates();
+		}
+
+		final ContactAggregate aggregate = mContactAggregates.get(hashSimlarId(simlarId));
+		return aggregate == null ? new ContactAggregate() : aggregate;
+	}
+
+	private static Map<Long, ContactAggregate> readContactAggregates()
+	{
+		final Map<Long, ContactAggregate> aggregates = new HashMap<>();
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getFile())))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				return aggregates;
+			}
+
+			final byte[] bytes = new byte[RECORD_SIZE];
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (true) {
+				try {
+					in.readFully(bytes);
+				} catch (final IOException e) {
+					break;
+				}
+				buffer.clear();
+				final Record record = Record.read(buffer);
+				getOrCreateAggregate(aggregates, record.simlarIdHash).add(record);
+			}
+		} catch (final NotInitedException | IOException e) {
+			Lg.w("no call quality history to aggregate: ", e.getMessage());
+		}
+		return aggregates;
+	}
+
+	/// writes the last count calls as csv, oldest first
+	public static synchronized void exportTo(final Writer writer, final int count) throws IOException
+	{
+		final List<Record> records = getLastCalls(count);
+		Collections.reverse(records);
+
+		writer.write("start,simlarIdHash,duration,endReason,ice,network,video,codec,quality,averageQuality,p95Jitter,p95RoundTripDelay,averagePacketLoss\n");
+		for (final Record record : records) {
+			writer.write(record.startTime + "," + Long.toHexString(record.simlarIdHash) + ',' + record.durationSeconds + ',' + record.endReason +
+					',' + record.iceState + ',' + record.networkType + ',' + record.video + ',' + record.codec + ',' + record.getPredominantQuality() +
+					',' + record.averageQuality + ',' + record.p95Jitter + ',' + record.p95RoundTripDelay + ',' + record.averagePacketLoss + '\n');
+		}
+		writer.flush();
+	}
+
+	private static void compactIfNeeded()
+	{
+		try {
+			final File file = getFile();
+			final long records = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+			if (records <= MAX_RECORDS) {
+				return;
+			}
+
+			final File tmpFile = new File(file.getPath() + ".tmp");
+			try (final RandomAccessFile in = new RandomAccessFile(file, "r");
+				 final RandomAccessFile out = new RandomAccessFile(tmpFile, "rw")) {
+				final long keep = MAX_RECORDS / 2;
+				out.setLength(0);
+				out.getChannel().write(createHeader(), 0);
+				in.getChannel().transferTo(HEADER_SIZE + (records - keep) * RECORD_SIZE, keep * RECORD_SIZE, out.getChannel().position(HEADER_SIZE));
+			}
+
+			if (!tmpFile.renameTo(file)) {
+				Lg.w("failed to rename compacted call quality history");
+				return;
+			}
+			mContactAggregates = null;
+			Lg.i("compacted call quality history");
+		} catch (final NotInitedException | IOException e) {
+			Lg.ex(e, "Exception compacting call quality history");
+		}
+	}
+}
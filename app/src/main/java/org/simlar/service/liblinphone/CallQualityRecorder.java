@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.linphone.core.IceState;
+import org.linphone.core.StreamType;
+
+import org.simlar.helper.CallEndReason;
+import org.simlar.helper.FileHelper;
+import org.simlar.helper.FileHelper.NotInitedException;
+import org.simlar.helper.NetworkQuality;
+import org.simlar.helper.NetworkType;
+import org.simlar.logging.Lg;
+import org.simlar.utils.Scheduler;
+
+/// Records the call stats of each tick per stream and writes a summary to disk when the call ends.
+/// Only to be used from the linphone thread.
+final class CallQualityRecorder
+{
+	private static final int CAPACITY = 1024; // older samples get overwritten
+	private static final long MAX_FILE_SIZE = 256 * 1024;
+	private static final Object FILE_LOCK = new Object();
+
+	enum Metric
+	{
+		QUALITY, // in hundredths
+		UPLOAD, // in 100 bytes per second
+		DOWNLOAD, // in 100 bytes per second
+		JITTER, // in ms
+		PACKET_LOSS, // in per mille
+		LATE_PACKETS, // since the previous sample
+		ROUND_TRIP_DELAY // in ms
+	}
+
+	private static final int METRICS = Metric.values().length;
+	private static final int ICE_STATES = IceState.values().length + 1; // last one counts unknown states
+
+	private static final class Series
+	{
+		final int[][] values = new int[METRICS][CAPACITY];
+		final int[] iceStateCounts = new int[ICE_STATES];
+		final int[] qualityCounts = new int[NetworkQuality.values().length];
+		int count = 0;
+		int next = 0;
+		long lastLatePackets = 0;
+		String codec = null;
+
+		void add(final int quality, final int upload, final int download, final int jitter, final int packetLoss, final long latePackets,
+		         final int roundTripDelay, final IceState iceState, final String codec)
+		{
+			values[Metric.QUALITY.ordinal()][next] = quality;
+			values[Metric.UPLOAD.ordinal()][next] = upload;
+			values[Metric.DOWNLOAD.ordinal()][next] = download;
+			values[Metric.JITTER.ordinal()][next] = jitter;
+			values[Metric.PACKET_LOSS.ordinal()][next] = packetLoss;
+			values[Metric.LATE_PACKETS.ordinal()][next] = (int) Math.max(latePackets - lastLatePackets, 0);
+			values[Metric.ROUND_TRIP_DELAY.ordinal()][next] = roundTripDelay;
+			lastLatePackets = latePackets;
+
+			++iceStateCounts[iceState == null ? ICE_STATES - 1 : iceState.ordinal()];
+			++qualityCounts[NetworkQuality.fromFloat(quality / 100.0f).ordinal()];
+			if (codec != null) {
+				this.codec = codec;
+			}
+
+			next = (next + 1) % CAPACITY;
+			count = Math.min(count + 1, CAPACITY);
+		}
+
+		void reset()
+		{
+			Arrays.fill(iceStateCounts, 0);
+			Arrays.fill(qualityCounts, 0);
+			count = 0;
+			next = 0;
+			lastLatePackets = 0;
+			codec = null;
+		}
+	}
+
+	static final class MetricSummary
+	{
+		final int min;
+		final int average;
+		final int p95;
+		final int max;
+
+		MetricSummary(final int min, final int average, final int p95, final int max)
+		{
+			this.min = min;
+			this.average = average;
+			this.p95 = p95;
+			this.max = max;
+		}
+	}
+
+	static final class StreamSummary
+	{
+		final StreamType type;
+		final int samples;
+		final String codec;
+		final MetricSummary[] metrics;
+		final int[] iceStateCounts;
+		final int[] qualityCounts;
+
+		StreamSummary(final StreamType type, final int samples, final String codec, final MetricSummary[] metrics, final int[] iceStateCounts,
+		              final int[] qualityCounts)
+		{
+			this.type = type;
+			this.samples = samples;
+			this.codec = codec;
+			this.metrics = metrics;
+			this.iceStateCounts = iceStateCounts;
+			this.qualityCounts = qualityCounts;
+		}
+
+		MetricSummary get(final Metric metric)
+		{
+			return metrics[metric.ordinal()];
+		}
+
+		// the ice state seen most often, null if unknown
+		IceState getPredominantIceState()
+		{
+			int maxIndex = ICE_STATES - 1;
+			for (int i = 0; i < ICE_STATES; ++i) {
+				if (iceStateCounts[i] > iceStateCounts[maxIndex]) {
+					maxIndex = i;
+				}
+			}
+			return maxIndex == ICE_STATES - 1 ? null : IceState.values()[maxIndex];
+		}
+	}
+
+	private final Series mAudio = new Series();
+	private final Series mVideo = new Series();
+	private final int[] mSortBuffer = new int[CAPACITY];
+	private long mStartTime = -1;
+
+	void record(final StreamType type, final float quality, final int upload, final int download, final int jitter, final int packetLoss,
+	            final long latePackets, final int roundTripDelay, final IceState iceState, final String codec)
+	{
+		final Series series = type == StreamType.Video ? mVideo : mAudio;
+		if (mStartTime < 0) {
+			mStartTime = System.currentTimeMillis();
+		}
+		series.add(Math.round(quality * 100.0f), upload, download, jitter, packetLoss, latePackets, roundTripDelay, iceState, codec);
+	}
+
+	boolean hasSamples()
+	{
+		return mAudio.count > 0 || mVideo.count > 0;
+	}
+
+	long getStartTime()
+	{
+		return mStartTime;
+	}
+
+	StreamSummary summarize(final StreamType type)
+	{
+		final Series series = type == StreamType.Video ? mVideo : mAudio;
+		if (series.count == 0) {
+			return null;
+		}
+
+		final MetricSummary[] metrics = new MetricSummary[METRICS];
+		for (int m = 0; m < METRICS; ++m) {
+			System.arraycopy(series.values[m], 0, mSortBuffer, 0, series.count);
+			Arrays.sort(mSortBuffer, 0, series.count);
+
+			long sum = 0;
+			for (int i = 0; i < series.count; ++i) {
+				sum += mSortBuffer[i];
+			}
+
+			final int p95Index = Math.min((int) Math.ceil(series.count * 0.95) - 1, series.count - 1);
+			metrics[m] = new MetricSummary(mSortBuffer[0], (int) (sum / series.count), mSortBuffer[Math.max(p95Index, 0)], mSortBuffer[series.count - 1]);
+		}
+
+		return new StreamSummary(type, series.count, series.codec, metrics, series.iceStateCounts.clone(), series.qualityCounts.clone());
+	}
+
+	void reset()
+	{
+		mAudio.reset();
+		mVideo.reset();
+		mStartTime = -1;
+	}
+
+	// summarizes the call, writes it to disk in the background and resets the recorder for the next call
+	void finishCall(final String simlarId, final CallEndReason callEndReason, final NetworkType networkType)
+	{
+		if (!hasSamples()) {
+			reset();
+			return;
+		}
+
+		final long startTime = mStartTime;
+		final long duration = System.currentTimeMillis() - startTime;
+		final StreamSummary audio = summarize(StreamType.Audio);
+		final StreamSummary video = summarize(StreamType.Video);
+		reset();
+
+		final CallQualityHistory.Record record = audio == null ? null : createRecord(startTime, duration, simlarId, callEndReason, networkType, audio, video != null);
+
+		Scheduler.execute(Scheduler.Pool.DISK, Scheduler.Priority.BACKGROUND, () -> {
+			writeSummary(startTime, duration, audio, video);
+			if (record != null) {
+				CallQualityHistory.append(record);
+			}
+		});
+	}
+
+	private static CallQualityHistory.Record createRecord(final long startTime, final long duration, final String simlarId, final CallEndReason callEndReason,
+	                                                      final NetworkType networkType, final StreamSummary audio, final boolean video)
+	{
+		return new CallQualityHistory.Record(startTime, CallQualityHistory.hashSimlarId(simlarId), (int) (duration / 1000),
+				callEndReason == null ? CallEndReason.NONE : callEndReason, audio.getPredominantIceState(), networkType, video, audio.codec,
+				audio.qualityCounts, audio.get(Metric.QUALITY).average, audio.get(Metric.JITTER).p95, audio.get(Metric.ROUND_TRIP_DELAY).p95,
+				audio.get(Metric.PACKET_LOSS).average);
+	}
+
+	private static String format(final long startTime, final long duration, final StreamSummary summary)
+	{
+		final StringBuilder sb = new StringBuilder()
+				.append(startTime).append(' ').append(summary.type).append(" duration=").append(duration / 1000)
+				.append(" samples=").append(summary.samples)
+				.append(" codec=").append(summary.codec)
+				.append(" ice=").append(summary.getPredominantIceState());
+		for (final Metric metric : Metric.values()) {
+			final MetricSummary metricSummary = summary.get(metric);
+			sb.append(' ').append(metric.name().toLowerCase(Locale.US)).append('=')
+					.append(metricSummary.min).append('/').append(metricSummary.average).append('/')
+					.append(metricSummary.p95).append('/').append(metricSummary.max);
+		}
+		return sb.append('\n').toString();
+	}
+
+	private static void writeSummary(final long startTime, final long duration, final StreamSummary audio, final StreamSummary video)
+	{
+		synchronized (FILE_LOCK) {
+			try {
+				final File file = new File(FileHelper.getCallQualityFileName());
+				if (file.length() > MAX_FILE_SIZE) {
+					final File oldFile = new File(file.getPath() + ".old");
+					if (!file.renameTo(oldFile)) {
+						Lg.w("failed to rotate call quality file");
+					}
+				}
+
+				try (final Writer writer = new FileWriter(file, true)) {
+					if (audio != null) {
+						writer.write(format(startTime, duration, audio));
+					}
+					if (video != null) {
+						writer.write(format(startTime, duration, video));
+					}
+				}
+			} catch (final NotInitedException e) {
+				Lg.ex(e, "NotInitedException writing call quality summary");
+			} catch (final IOException e) {
+				Lg.ex(e, "IOException writing call quality summary");
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.IceState;
+import org.linphone.core.StreamType;
+
+// Decides which call stats ticks get recorded and logged: every tick while ice is negotiating or the
+// connection is degraded, otherwise only one per slow interval. Only to be used from the linphone thread.
+final class CallStatsSampler
+{
+	static final long DEFAULT_SLOW_INTERVAL_MILLISECONDS = 10000;
+	private static final float DEGRADED_QUALITY = 3.0f;
+
+	private final long[] mLastReport = new long[StreamType.values().length];
+	private long mSlowInterval = DEFAULT_SLOW_INTERVAL_MILLISECONDS;
+
+	CallStatsSampler()
+	{
+		reset();
+	}
+
+	void setSlowInterval(final long milliSeconds)
+	{
+		mSlowInterval = milliSeconds;
+	}
+
+	boolean shouldReport(final StreamType type, final IceState iceState, final float quality)
+	{
+		return shouldReport(SystemClock.elapsedRealtime(), type, iceState, quality);
+	}
+
+	boolean shouldReport(final long now, final StreamType type, final IceState iceState, final float quality)
+	{
+		final boolean fast = iceState == null || iceState == IceState.InProgress || quality < DEGRADED_QUALITY;
+		final int index = type.ordinal();
+		if (!fast && now - mLastReport[index] < mSlowInterval) {
+			return false;
+		}
+
+		mLastReport[index] = now;
+		return true;
+	}
+
+	void reset()
+	{
+		for (int i = 0; i < mLastReport.length; ++i) {
+			mLastReport[i] = Long.MIN_VALUE / 2;
+		}
+	}
+}
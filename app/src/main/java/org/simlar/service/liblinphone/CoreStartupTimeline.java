@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.simlar.logging.Lg;
+import org.simlar.logging.Tracer;
+
+/// Collects the time of each stage from a push notification or a service start to a registered core and a ringing call.
+final class CoreStartupTimeline
+{
+	enum Stage
+	{
+		PUSH_RECEIVED,
+		PREPARE_STARTED,
+		PREPARED,
+		CORE_STARTED,
+		CONFIGURED,
+		REGISTERED,
+		RINGING
+	}
+
+	private static final long[] mTimes = new long[Stage.values().length];
+	private static int mPushToRingingSpan = Tracer.NO_SPAN;
+
+	static {
+		Arrays.fill(mTimes, -1);
+	}
+
+	private CoreStartupTimeline()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	/// only the first occurrence of a stage counts, logs the timeline once the call rings
+	static synchronized void mark(final Stage stage)
+	{
+		if (mTimes[stage.ordinal()] >= 0) {
+			return;
+		}
+
+		mTimes[stage.ordinal()] = SystemClock.elapsedRealtime();
+		Tracer.instant("core " + stage.name().toLowerCase(Locale.US));
+		if (stage == Stage.PUSH_RECEIVED) {
+			mPushToRingingSpan = Tracer.begin("push to ringing");
+		}
+
+		if (stage == Stage.REGISTERED) {
+			Lg.i("core startup: ", format());
+			if (mTimes[Stage.PUSH_RECEIVED.ordinal()] < 0) {
+				// without a push notification there is no call to wait for
+				Arrays.fill(mTimes, -1);
+			}
+		}
+
+		if (stage == Stage.RINGING) {
+			Tracer.end(mPushToRingingSpan);
+			mPushToRingingSpan = Tracer.NO_SPAN;
+			Lg.i("time to ring: ", format());
+			Arrays.fill(mTimes, -1);
+		}
+	}
+
+	static synchronized void reset()
+	{
+		Arrays.fill(mTimes, -1);
+	}
+
+	// durations of the stages relative to the previous one and the total
+	private static String format()
+	{
+		final StringBuilder sb = new StringBuilder();
+		long first = -1;
+		long previous = -1;
+		for (final Stage stage : Stage.values()) {
+			final long time = mTimes[stage.ordinal()];
+			if (time < 0) {
+				continue;
+			}
+
+			if (first < 0) {
+				first = time;
+			} else {
+				sb.append(' ');
+			}
+			sb.append(stage.name().toLowerCase(Locale.US)).append('=').append(previous < 0 ? 0 : time - previous).append("ms");
+			previous = time;
+		}
+		return sb.append(" total=").append(previous - first).append("ms").toString();
+	}
+}
@@ -23,6 +23,10 @@ package org.simlar.service.liblinphone;
 import android.content.Context;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Random;
@@ -42,6 +46,7 @@ import org.linphone.core.LogLevel;
 import org.linphone.core.LoggingService;
 import org.linphone.core.MediaEncryption;
 import org.linphone.core.NatPolicy;
+import org.linphone.core.PayloadType;
 import org.linphone.core.Transports;
 import org.linphone.core.VideoActivationPolicy;
 import org.linphone.core.ZrtpKeyAgreement;
@@ -52,13 +57,18 @@ import org.simlar.helper.Version;
 import org.simlar.helper.Volumes;
 import org.simlar.logging.Lg;
 import org.simlar.service.AudioOutputType;
+import org.simlar.utils.Streams;
 import org.simlar.utils.Util;
 
 final class LinphoneHandler
 {
 	private static final String STUN_SERVER = "stun.simlar.org";
 
+	private static volatile boolean mPrepared = false;
+
 	private Core mLinphoneCore = null;
+	private String mDefaultVideoDefinition = null;
+	private int mDefaultOpusBitrate = 0;
 
 	public synchronized void destroy(final CoreListener listener)
 	{
@@ -77,6 +87,44 @@ final class LinphoneHandler
 		Lg.i("destroy ended");
 	}
 
+	/// Checks the files needed by the core and loads the native libraries, so initialize does not have to wait for the disk.
+	/// Does not touch the core and may be called from any thread.
+	public static boolean prepare(final String... files)
+	{
+		for (final String fileName : files) {
+			if (Util.isNullOrEmpty(fileName)) {
+				Lg.e("prepare: file name not set");
+				return false;
+			}
+
+			final File file = new File(fileName);
+			if (!file.canRead()) {
+				Lg.e("prepare: unable to read file: ", fileName);
+				return false;
+			}
+
+			// reading the file once pulls it into the page cache
+			final long size;
+			try (final InputStream is = new FileInputStream(file)) {
+				size = Streams.drain(is, Long.MAX_VALUE);
+			} catch (final IOException e) {
+				Lg.ex(e, "prepare: IOException reading file: ", fileName);
+				return false;
+			}
+
+			if (size == 0) {
+				Lg.e("prepare: empty file: ", fileName);
+				return false;
+			}
+		}
+
+		if (!mPrepared) {
+			Factory.instance();
+			mPrepared = true;
+		}
+		return true;
+	}
+
 	@SuppressWarnings("BooleanMethodIsAlwaysInverted")
 	public boolean isInitialized()
 	{
@@ -126,6 +174,7 @@ final class LinphoneHandler
 		Lg.i("liblinphone version: ", mLinphoneCore.getVersion());
 		mLinphoneCore.addListener(listener);
 		mLinphoneCore.start();
+		CoreStartupTimeline.mark(CoreStartupTimeline.Stage.CORE_STARTED);
 		mLinphoneCore.setUserAgent("Simlar", Version.getVersionName(context));
 
 		mLinphoneCore.setIpv6Enabled(false);
@@ -212,6 +261,13 @@ final class LinphoneHandler
 
 		// make sure DNS SRV is disabled
 		mLinphoneCore.setDnsSrvEnabled(false);
+
+		// remember defaults to restore after a call with media limits
+		mDefaultVideoDefinition = mLinphoneCore.getPreferredVideoDefinition().getName();
+		final PayloadType opus = mLinphoneCore.getPayloadType("opus", -1, -1);
+		mDefaultOpusBitrate = opus == null ? 0 : opus.getNormalBitrate();
+
+		CoreStartupTimeline.mark(CoreStartupTimeline.Stage.CONFIGURED);
 	}
 
 	private NatPolicy createNatPolicy()
@@ -280,6 +336,11 @@ final class LinphoneHandler
 	{
 		Lg.i("unregister triggered");
 
+		if (mLinphoneCore == null) {
+			Lg.w("unregister: mLinphoneCore is null => aborting");
+			return;
+		}
+
 		final Account account = mLinphoneCore.getDefaultAccount();
 		if (account == null) {
 			Lg.e("unregister triggered but no default account");
@@ -393,6 +454,39 @@ final class LinphoneHandler
 		call.resume();
 	}
 
+	public void applyMediaLimits(final CallMediaPolicy.Level level, final boolean renegotiate)
+	{
+		if (mLinphoneCore == null) {
+			Lg.e("applyMediaLimits: mLinphoneCore is null => aborting");
+			return;
+		}
+
+		Lg.i("applying media limits: ", level, " renegotiate=", renegotiate);
+
+		mLinphoneCore.setUploadBandwidth(level.uploadBandwidth);
+		mLinphoneCore.setDownloadBandwidth(level.downloadBandwidth);
+
+		final PayloadType opus = mLinphoneCore.getPayloadType("opus", -1, -1);
+		if (opus != null && mDefaultOpusBitrate > 0) {
+			opus.setNormalBitrate(level.opusBitrate > 0 ? level.opusBitrate : mDefaultOpusBitrate);
+		}
+
+		if (mLinphoneCore.videoSupported()) {
+			mLinphoneCore.setPreferredVideoDefinitionByName(level.videoDefinition != null ? level.videoDefinition : mDefaultVideoDefinition);
+			mLinphoneCore.setPreferredFramerate(level.videoFrameRate);
+		}
+
+		// without renegotiation the limits apply to the next offer, e.g. of the next call
+		if (!renegotiate) {
+			return;
+		}
+
+		final Call currentCall = getCurrentCall();
+		if (currentCall != null && currentCall.getState() == Call.State.StreamsRunning) {
+			currentCall.update(null);
+		}
+	}
+
 	public void setVolumes(final Volumes volumes)
 	{
 		if (mLinphoneCore == null) {
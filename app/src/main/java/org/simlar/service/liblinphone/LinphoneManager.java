@@ -21,7 +21,11 @@
 package org.simlar.service.liblinphone;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.TextureView;
 
 import androidx.annotation.NonNull;
@@ -47,23 +51,35 @@ import org.simlar.R;
 import org.simlar.helper.CallEndReason;
 import org.simlar.helper.FileHelper;
 import org.simlar.helper.FileHelper.NotInitedException;
-import org.simlar.helper.NetworkQuality;
+import org.simlar.helper.NetworkType;
 import org.simlar.helper.VideoState;
 import org.simlar.helper.Volumes;
 import org.simlar.helper.Volumes.MicrophoneStatus;
 import org.simlar.logging.Lg;
+import org.simlar.logging.Tracer;
 import org.simlar.service.AudioOutputType;
+import org.simlar.utils.Scheduler;
 import org.simlar.utils.Util;
 
 public final class LinphoneManager extends CoreListenerStub
 {
 	private VideoState mVideoState = VideoState.OFF;
 	private final LinphoneHandler mLinphoneHandler = new LinphoneHandler();
+	private final CallQualityRecorder mCallQualityRecorder = new CallQualityRecorder();
+	private final CallStatsSampler mCallStatsSampler = new CallStatsSampler();
+	private final NetworkQualityEstimator mNetworkQualityEstimator = new NetworkQualityEstimator();
+	private final CallMediaPolicy mCallMediaPolicy = new CallMediaPolicy();
+	private NetworkType mCallNetworkType = NetworkType.NONE;
 
 	private final LinphoneManagerListener mListener;
 	private RegistrationState mRegistrationState = RegistrationState.None;
 	private Volumes mVolumes = new Volumes();
 	private final Context mContext;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private boolean mInitializing = false;
+	private boolean mFinished = false;
+	private String mPendingSimlarId = null;
+	private String mPendingPassword = null;
 
 	public LinphoneManager(final LinphoneManagerListener listener, final Context context)
 	{
@@ -74,34 +90,99 @@ public final class LinphoneManager extends CoreListenerStub
 
 	public void finish()
 	{
+		mFinished = true;
+		mHandler.removeCallbacksAndMessages(null);
 		mLinphoneHandler.destroy(this);
+		CoreStartupTimeline.reset();
+	}
+
+	/// Called for push notifications before the service starts: checks the files and loads liblinphone in the background
+	/// so the core can be created sooner.
+	public static void prewarm()
+	{
+		CoreStartupTimeline.reset();
+		CoreStartupTimeline.mark(CoreStartupTimeline.Stage.PUSH_RECEIVED);
+
+		try {
+			final String linphoneInitialConfigFile = FileHelper.getLinphoneInitialConfigFile();
+			final String rootCaFile = FileHelper.getRootCaFileName();
+			final String pauseSoundFile = FileHelper.getPauseSoundFile();
+
+			Scheduler.execute(Scheduler.Pool.DISK, Scheduler.Priority.CALL, () -> {
+				Lg.i("prewarm liblinphone");
+				final int span = Tracer.begin("LinphoneHandler.prewarm");
+				FileHelper.waitForAssets();
+				LinphoneHandler.prepare(linphoneInitialConfigFile, rootCaFile, pauseSoundFile);
+				Tracer.end(span);
+			});
+		} catch (final NotInitedException e) {
+			Lg.ex(e, "FileHelper.NotInitedException during prewarm");
+		}
 	}
 
 	public void register(final String mySimlarId, final String password)
 	{
 		Lg.i("register");
 
+		if (mLinphoneHandler.isInitialized()) {
+			mLinphoneHandler.unregister();
+			mLinphoneHandler.setCredentials(mySimlarId, password);
+			return;
+		}
+
+		mPendingSimlarId = mySimlarId;
+		mPendingPassword = password;
+		if (mInitializing) {
+			Lg.i("register: core initialization already running");
+			return;
+		}
+
 		try {
 			final String linphoneInitialConfigFile = FileHelper.getLinphoneInitialConfigFile();
 			final String rootCaFile = FileHelper.getRootCaFileName();
 			final String zrtpSecretsCacheFile = FileHelper.getZrtpSecretsCacheFileName();
 			final String ringbackSoundFile = FileHelper.getRingbackSoundFile();
 			final String pauseSoundFile = FileHelper.getPauseSoundFile();
-			final Volumes volumes = mVolumes;
-
-			if (mLinphoneHandler.isInitialized()) {
-				mLinphoneHandler.unregister();
-			} else {
-				mLinphoneHandler.initialize(this, mContext, linphoneInitialConfigFile, rootCaFile,
-						zrtpSecretsCacheFile, ringbackSoundFile, pauseSoundFile);
-				mLinphoneHandler.setVolumes(volumes);
-			}
-			mLinphoneHandler.setCredentials(mySimlarId, password);
+
+			// check the files and load liblinphone on a worker, the core itself has to be created on the main thread which runs its callbacks
+			mInitializing = true;
+			CoreStartupTimeline.mark(CoreStartupTimeline.Stage.PREPARE_STARTED);
+			Scheduler.execute(Scheduler.Pool.DISK, Scheduler.Priority.CALL, () -> {
+				final int span = Tracer.begin("LinphoneHandler.prepare");
+				FileHelper.waitForAssets();
+				final boolean prepared = LinphoneHandler.prepare(linphoneInitialConfigFile, rootCaFile, pauseSoundFile);
+				Tracer.end(span);
+				CoreStartupTimeline.mark(CoreStartupTimeline.Stage.PREPARED);
+				mHandler.post(() -> initialize(prepared, linphoneInitialConfigFile, rootCaFile, zrtpSecretsCacheFile, ringbackSoundFile, pauseSoundFile));
+			});
 		} catch (final NotInitedException e) {
 			Lg.ex(e, "PreferencesHelper.NotInitedException");
 		}
 	}
 
+	private void initialize(final boolean prepared, final String linphoneInitialConfigFile, final String rootCaFile, final String zrtpSecretsCacheFile,
+	                        final String ringbackSoundFile, final String pauseSoundFile)
+	{
+		mInitializing = false;
+		if (mFinished) {
+			Lg.i("initialize: already finished");
+			return;
+		}
+
+		if (!prepared) {
+			Lg.w("initialize: preparing liblinphone failed");
+		}
+
+		final int span = Tracer.begin("LinphoneHandler.initialize");
+		mLinphoneHandler.initialize(this, mContext, linphoneInitialConfigFile, rootCaFile,
+				zrtpSecretsCacheFile, ringbackSoundFile, pauseSoundFile);
+		mLinphoneHandler.setVolumes(mVolumes);
+		mLinphoneHandler.setCredentials(mPendingSimlarId, mPendingPassword);
+		Tracer.end(span);
+		mPendingSimlarId = null;
+		mPendingPassword = null;
+	}
+
 	public void unregister()
 	{
 		mLinphoneHandler.unregister();
@@ -289,6 +370,9 @@ public final class LinphoneManager extends CoreListenerStub
 
 		Lg.i("registration state for ", new Lg.Anonymizer(identity), " changed: ", state, " ", message);
 		mRegistrationState = state;
+		if (state == RegistrationState.Ok) {
+			CoreStartupTimeline.mark(CoreStartupTimeline.Stage.REGISTERED);
+		}
 
 		mListener.onRegistrationStateChanged(state);
 	}
@@ -357,6 +441,24 @@ public final class LinphoneManager extends CoreListenerStub
 		}
 
 		updateVideoState(videoState);
+		if (fixedState == Call.State.IncomingReceived) {
+			CoreStartupTimeline.mark(CoreStartupTimeline.Stage.RINGING);
+		}
+		if (fixedState == Call.State.StreamsRunning) {
+			mCallNetworkType = NetworkType.fromContext(mContext);
+		}
+		if (fixedState == Call.State.End) {
+			mCallQualityRecorder.finishCall(number, callEndReason, NetworkType.fromContext(mContext));
+			mCallStatsSampler.reset();
+			if (mNetworkQualityEstimator.hasSamples()) {
+				Lg.i("network quality estimator: ", mNetworkQualityEstimator.getReport());
+			}
+			mNetworkQualityEstimator.reset();
+			if (mCallMediaPolicy.getLevel() != CallMediaPolicy.Level.UNLIMITED) {
+				mLinphoneHandler.applyMediaLimits(CallMediaPolicy.Level.UNLIMITED, false);
+			}
+			mCallMediaPolicy.reset();
+		}
 		mListener.onCallStateChanged(number, fixedState, callEndReason);
 	}
 
@@ -377,39 +479,69 @@ public final class LinphoneManager extends CoreListenerStub
 
 		final int upload = getBandwidth(stats.getUploadBandwidth());
 		final int download = getBandwidth(stats.getDownloadBandwidth());
-		final String iceState = getIceStateUiString(stats.getIceState());
+		final IceState rawIceState = stats.getIceState();
 		final int jitter = Math.round((stats.getReceiverInterarrivalJitter() + stats.getSenderInterarrivalJitter()) * 1000.0f);
 		final int packetLoss = Math.round((stats.getReceiverLossRate() + stats.getSenderLossRate()) / 2.0f * 10.0f); // sum of up and down stream loss in per mille
 		final long latePackets = stats.getLatePacketsCumulativeNumber();
 		final int roundTripDelay = Math.round(stats.getRoundTripDelay() * 1000.0f);
 		final String codec = getCodec(call, type);
-		final int duration = call.getDuration();
-		final String encryptionDescription = stats.getZrtpKeyAgreementAlgo() + ' ' + stats.getZrtpHashAlgo() + ' ' + stats.getZrtpCipherAlgo();
 
 		// set quality to unusable if up or download bandwidth is zero
 		final float quality = upload > 0 && download > 0 ? call.getCurrentQuality() : 0;
 
-		Lg.d("onCallStatsUpdated: number=", new CallLogger(call),
-				" type=", type,
-				" quality=", quality,
-				" upload=", upload,
-				" download=", download,
-				" iceState=", iceState,
-				" jitter=", jitter,
-				" loss=", packetLoss,
-				" latePackets=", latePackets,
-				" roundTripDelay=", roundTripDelay,
-				" codec=", codec,
-				" encryption=", encryptionDescription,
-				" duration=", duration);
-
-		if (type == StreamType.Video) {
-			if (download > 0 && mVideoState == VideoState.INITIALIZING) {
-				Lg.i("detect video playing based on video download bandwidth: ", download);
-				updateVideoState(VideoState.PLAYING);
+		if (type == StreamType.Video && download > 0 && mVideoState == VideoState.INITIALIZING) {
+			Lg.i("detect video playing based on video download bandwidth: ", download);
+			updateVideoState(VideoState.PLAYING);
+		}
+
+		final boolean audio = type == StreamType.Audio;
+		if (audio) {
+			final long now = SystemClock.elapsedRealtime();
+			mNetworkQualityEstimator.update(now, quality, upload, download, jitter, packetLoss, roundTripDelay);
+
+			final CallMediaPolicy.Level level = mCallMediaPolicy.evaluate(now, mCallNetworkType, packetLoss, roundTripDelay);
+			if (level != null) {
+				Lg.i("media policy changed: level=", level, " networkType=", mCallNetworkType, " loss=", packetLoss, " roundTripDelay=", roundTripDelay);
+				mLinphoneHandler.applyMediaLimits(level, mCallMediaPolicy.shouldRenegotiate());
 			}
-		} else {
-			mListener.onCallStatsChanged(NetworkQuality.fromFloat(quality), duration, codec, iceState, upload, download,
+		}
+
+		// the ui gets every tick, recording and logging only samples, which come early if a degradation is predicted
+		final float sampleQuality = audio ? Math.min(quality, mNetworkQualityEstimator.getPrediction()) : quality;
+		final boolean sampled = mCallStatsSampler.shouldReport(type, rawIceState, sampleQuality);
+		if (sampled) {
+			mCallQualityRecorder.record(type, quality, upload, download, jitter, packetLoss, latePackets, roundTripDelay, rawIceState, codec);
+		}
+
+		if (!audio && !sampled) {
+			return;
+		}
+
+		final String iceState = getIceStateUiString(rawIceState);
+		final int duration = call.getDuration();
+		final String encryptionDescription = stats.getZrtpKeyAgreementAlgo() + ' ' + stats.getZrtpHashAlgo() + ' ' + stats.getZrtpCipherAlgo();
+
+		if (sampled && Lg.isLoggable(Log.DEBUG)) {
+			Lg.d("onCallStatsUpdated: number=", new CallLogger(call),
+					" type=", type,
+					" quality=", quality,
+					" estimate=", audio ? mNetworkQualityEstimator.getEstimate() : null,
+					" prediction=", audio ? mNetworkQualityEstimator.getPrediction() : null,
+					" confidence=", audio ? mNetworkQualityEstimator.getConfidence() : null,
+					" upload=", upload,
+					" download=", download,
+					" iceState=", iceState,
+					" jitter=", jitter,
+					" loss=", packetLoss,
+					" latePackets=", latePackets,
+					" roundTripDelay=", roundTripDelay,
+					" codec=", codec,
+					" encryption=", encryptionDescription,
+					" duration=", duration);
+		}
+
+		if (audio) {
+			mListener.onCallStatsChanged(mNetworkQualityEstimator.getQuality(), duration, codec, iceState, upload, download,
 					jitter, packetLoss, latePackets, roundTripDelay, encryptionDescription);
 		}
 	}
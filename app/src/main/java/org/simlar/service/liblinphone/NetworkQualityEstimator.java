@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import java.util.Locale;
+
+import org.simlar.helper.NetworkQuality;
+
+/// Smooths the call stats of the audio stream and predicts the call quality a few seconds ahead.
+/// The time of each sample is passed in, so recorded stats traces may be replayed deterministically.
+/// Only to be used from the linphone thread.
+final class NetworkQualityEstimator
+{
+	private static final float MAX_QUALITY = 5.0f;
+	private static final float VALUE_TIME_CONSTANT = 2000.0f; // ms
+	private static final float SLOPE_TIME_CONSTANT = 4000.0f; // ms
+	private static final long HORIZON_MILLISECONDS = 3000;
+	private static final float HYSTERESIS = 0.25f;
+	private static final int WARM_UP_SAMPLES = 5;
+	private static final int PENDING_PREDICTIONS = 16;
+
+	private static final class Ewma
+	{
+		float value = 0.0f;
+		float slope = 0.0f; // per second
+		float variance = 0.0f;
+		boolean initialized = false;
+
+		void update(final float sample, final long deltaMilliSeconds)
+		{
+			if (!initialized) {
+				value = sample;
+				initialized = true;
+				return;
+			}
+
+			final float alpha = alpha(deltaMilliSeconds, VALUE_TIME_CONSTANT);
+			final float previous = value;
+			final float deviation = sample - value;
+			value += alpha * deviation;
+			variance = (1.0f - alpha) * (variance + alpha * deviation * deviation);
+			if (deltaMilliSeconds > 0) {
+				slope += alpha(deltaMilliSeconds, SLOPE_TIME_CONSTANT) * ((value - previous) * 1000.0f / deltaMilliSeconds - slope);
+			}
+		}
+
+		private static float alpha(final long deltaMilliSeconds, final float timeConstant)
+		{
+			return 1.0f - (float) Math.exp(-Math.max(deltaMilliSeconds, 0) / timeConstant);
+		}
+
+		void reset()
+		{
+			value = 0.0f;
+			slope = 0.0f;
+			variance = 0.0f;
+			initialized = false;
+		}
+	}
+
+	private final Ewma mQuality = new Ewma();
+	private final Ewma mScore = new Ewma();
+	private final Ewma mDownload = new Ewma();
+	private long mLastTime = -1;
+	private int mSamples = 0;
+	private float mEstimate = -1.0f;
+	private float mPrediction = -1.0f;
+	private float mConfidence = 0.0f;
+	private NetworkQuality mReportedQuality = NetworkQuality.UNKNOWN;
+
+	// accuracy bookkeeping: predictions wait until their horizon is reached and get compared to the then measured quality
+	private final long[] mPendingTimes = new long[PENDING_PREDICTIONS];
+	private final int[] mPendingQualities = new int[PENDING_PREDICTIONS];
+	private int mPendingStart = 0;
+	private int mPendingCount = 0;
+	private int mEvaluated = 0;
+	private int mExact = 0;
+	private int mWithinOne = 0;
+	private int mDegradationsPredicted = 0;
+	private int mDegradationsSeen = 0;
+	private long mUpdateNanos = 0;
+
+	void update(final long time, final float quality, final int upload, final int download, final int jitter, final int packetLoss,
+	            final int roundTripDelay)
+	{
+		final long start = System.nanoTime();
+
+		evaluatePredictions(time, quality);
+
+		final long delta = mLastTime < 0 ? 0 : time - mLastTime;
+		mLastTime = time;
+		++mSamples;
+
+		mScore.update(upload > 0 && download > 0 ? scoreFromMetrics(jitter, packetLoss, roundTripDelay) : 0.0f, delta);
+		mDownload.update(download, delta);
+
+		// linphone reports a negative quality as long as it has no measurement, rely on the stream metrics until then
+		if (quality >= 0) {
+			mQuality.update(quality, delta);
+		}
+		final Ewma measured = mQuality.initialized ? mQuality : mScore;
+
+		mEstimate = clamp(0.5f * (measured.value + mScore.value));
+
+		float trend = 0.5f * (measured.slope + mScore.slope);
+		if (mDownload.value > 0 && mDownload.slope < 0) {
+			// a shrinking download bandwidth usually precedes packet loss
+			trend += Math.max(mDownload.slope / mDownload.value, -0.5f);
+		}
+		mPrediction = clamp(mEstimate + Math.min(trend, 0.0f) * HORIZON_MILLISECONDS / 1000.0f);
+
+		final float spread = (float) Math.sqrt(0.5f * (measured.variance + mScore.variance));
+		mConfidence = Math.min(mSamples / (float) WARM_UP_SAMPLES, 1.0f) / (1.0f + spread);
+
+		mReportedQuality = applyHysteresis(mReportedQuality, mEstimate);
+
+		addPrediction(time + HORIZON_MILLISECONDS, NetworkQuality.fromFloat(mPrediction));
+
+		mUpdateNanos += System.nanoTime() - start;
+	}
+
+	// rough mapping of the measured stream metrics to linphone's quality scale
+	private static float scoreFromMetrics(final int jitter, final int packetLoss, final int roundTripDelay)
+	{
+		final float lossPenalty = Math.min(packetLoss / 40.0f, 3.0f); // 4 % loss costs one point
+		final float jitterPenalty = Math.min(Math.max(jitter - 20, 0) / 40.0f, 1.5f);
+		final float delayPenalty = Math.min(Math.max(roundTripDelay - 150, 0) / 200.0f, 1.5f);
+		return clamp(MAX_QUALITY - lossPenalty - jitterPenalty - delayPenalty);
+	}
+
+	private static float clamp(final float quality)
+	{
+		return Math.max(0.0f, Math.min(quality, MAX_QUALITY));
+	}
+
+	private static NetworkQuality applyHysteresis(final NetworkQuality reported, final float estimate)
+	{
+		final NetworkQuality quality = NetworkQuality.fromFloat(estimate);
+		if (!reported.isKnown() || quality == reported) {
+			return quality;
+		}
+
+		// only switch once the estimate left the band of the reported quality by a margin
+		final NetworkQuality lower = NetworkQuality.fromFloat(clamp(estimate - HYSTERESIS));
+		final NetworkQuality upper = NetworkQuality.fromFloat(clamp(estimate + HYSTERESIS));
+		return lower == quality && upper == quality ? quality : reported;
+	}
+
+	private void addPrediction(final long targetTime, final NetworkQuality prediction)
+	{
+		if (mPendingCount == PENDING_PREDICTIONS) {
+			mPendingStart = (mPendingStart + 1) % PENDING_PREDICTIONS;
+			--mPendingCount;
+		}
+
+		final int index = (mPendingStart + mPendingCount) % PENDING_PREDICTIONS;
+		mPendingTimes[index] = targetTime;
+		mPendingQualities[index] = prediction.ordinal();
+		++mPendingCount;
+
+		if (prediction.ordinal() > mReportedQuality.ordinal() && mReportedQuality.isKnown()) {
+			++mDegradationsPredicted;
+		}
+	}
+
+	private void evaluatePredictions(final long time, final float quality)
+	{
+		final NetworkQuality measured = NetworkQuality.fromFloat(quality);
+		if (!measured.isKnown()) {
+			return;
+		}
+
+		while (mPendingCount > 0 && mPendingTimes[mPendingStart] <= time) {
+			final int predicted = mPendingQualities[mPendingStart];
+			mPendingStart = (mPendingStart + 1) % PENDING_PREDICTIONS;
+			--mPendingCount;
+
+			++mEvaluated;
+			if (predicted == measured.ordinal()) {
+				++mExact;
+			}
+			if (Math.abs(predicted - measured.ordinal()) <= 1) {
+				++mWithinOne;
+			}
+		}
+
+		if (mReportedQuality.isKnown() && measured.ordinal() > mReportedQuality.ordinal()) {
+			++mDegradationsSeen;
+		}
+	}
+
+	/// smoothed quality with hysteresis, meant for the ui
+	NetworkQuality getQuality()
+	{
+		return mReportedQuality;
+	}
+
+	/// smoothed quality on linphone's scale from 0 to 5, negative without samples
+	float getEstimate()
+	{
+		return mEstimate;
+	}
+
+	/// expected quality in a few seconds on linphone's scale from 0 to 5, negative without samples
+	float getPrediction()
+	{
+		return mPrediction;
+	}
+
+	NetworkQuality getPredictedQuality()
+	{
+		return mPrediction < 0 ? NetworkQuality.UNKNOWN : NetworkQuality.fromFloat(mPrediction);
+	}
+
+	boolean isDegradationExpected()
+	{
+		return mReportedQuality.isKnown() && getPredictedQuality().ordinal() > mReportedQuality.ordinal();
+	}
+
+	/// between 0 and 1, low during warm up and while the metrics fluctuate
+	float getConfidence()
+	{
+		return mConfidence;
+	}
+
+	/// accuracy of the predictions and cpu cost since the last reset, e.g. to be logged at the end of a call
+	String getReport()
+	{
+		return String.format(Locale.US, "samples=%d evaluated=%d exact=%.2f withinOne=%.2f degradationsPredicted=%d degradationsSeen=%d cpu=%dns/sample",
+				mSamples, mEvaluated, ratio(mExact, mEvaluated), ratio(mWithinOne, mEvaluated), mDegradationsPredicted, mDegradationsSeen,
+				mSamples == 0 ? 0 : mUpdateNanos / mSamples);
+	}
+
+	private static float ratio(final int count, final int total)
+	{
+		return total == 0 ? 0.0f : count / (float) total;
+	}
+
+	boolean hasSamples()
+	{
+		return mSamples > 0;
+	}
+
+	void reset()
+	{
+		mQuality.reset();
+		mScore.reset();
+		mDownload.reset();
+		mLastTime = -1;
+		mSamples = 0;
+		mEstimate = -1.0f;
+		mPrediction = -1.0f;
+		mConfidence = 0.0f;
+		mReportedQuality = NetworkQuality.UNKNOWN;
+		mPendingStart = 0;
+		mPendingCount = 0;
+		mEvaluated = 0;
+		mExact = 0;
+		mWithinOne = 0;
+		mDegradationsPredicted = 0;
+		mDegradationsSeen = 0;
+		mUpdateNanos = 0;
+	}
+}
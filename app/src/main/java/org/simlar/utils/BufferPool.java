@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Reusable byte buffers in a few size classes, so stream copies do not allocate a new buffer each time.
+/// Requests larger than the biggest class get a fresh buffer which is not pooled.
+public final class BufferPool
+{
+	public static final int SMALL = 4 * 1024;
+	public static final int MEDIUM = 16 * 1024;
+	public static final int LARGE = 64 * 1024;
+
+	private static final int[] SIZES = { SMALL, MEDIUM, LARGE };
+	private static final int MAX_POOLED_PER_SIZE = 4;
+
+	@SuppressWarnings("unchecked")
+	private static final ConcurrentLinkedQueue<byte[]>[] mPools = new ConcurrentLinkedQueue[SIZES.length];
+	private static final AtomicInteger[] mPooledCounts = new AtomicInteger[SIZES.length];
+
+	static {
+		for (int i = 0; i < SIZES.length; ++i) {
+			mPools[i] = new ConcurrentLinkedQueue<>();
+			mPooledCounts[i] = new AtomicInteger();
+		}
+	}
+
+	private BufferPool()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	private static int sizeClass(final int size)
+	{
+		for (int i = 0; i < SIZES.length; ++i) {
+			if (size <= SIZES[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/// returns a buffer of at least minSize bytes, hand it back with release
+	public static byte[] acquire(final int minSize)
+	{
+		final int sizeClass = sizeClass(minSize);
+		if (sizeClass < 0) {
+			return new byte[minSize];
+		}
+
+		final byte[] buffer = mPools[sizeClass].poll();
+		if (buffer == null) {
+			return new byte[SIZES[sizeClass]];
+		}
+
+		mPooledCounts[sizeClass].decrementAndGet();
+		return buffer;
+	}
+
+	public static void release(final byte[] buffer)
+	{
+		if (buffer == null) {
+			return;
+		}
+
+		final int sizeClass = sizeClass(buffer.length);
+		if (sizeClass < 0 || buffer.length != SIZES[sizeClass]) {
+			return;
+		}
+
+		if (mPooledCounts[sizeClass].incrementAndGet() > MAX_POOLED_PER_SIZE) {
+			mPooledCounts[sizeClass].decrementAndGet();
+			return;
+		}
+
+		mPools[sizeClass].offer(buffer);
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.utils;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.simlar.logging.Lg;
+
+/**
+ * App wide background scheduling: all background work runs on a few named pools with a bounded
+ * number of threads. Queued tasks are ordered by priority, so call critical work is started before
+ * user triggered work, which is started before background syncs.
+ */
+public final class Scheduler
+{
+	private static final long KEEP_ALIVE_SECONDS = 30;
+	private static final long SLOW_START_MILLISECONDS = 1000;
+	private static final AtomicLong mSequence = new AtomicLong();
+	private static ScheduledThreadPoolExecutor mTimer = null;
+
+	public enum Pool
+	{
+		NETWORK("network", 4),
+		DISK("disk", 2),
+		CPU("cpu", Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+		private final String mName;
+		private final int mThreads;
+		private final AtomicInteger mThreadCount = new AtomicInteger();
+		private final AtomicLong mExecuted = new AtomicLong();
+		private final AtomicLong mTotalQueueLatency = new AtomicLong();
+		private final AtomicLong mMaxQueueLatency = new AtomicLong();
+		private final AtomicLong mTotalRunTime = new AtomicLong();
+		private ThreadPoolExecutor mExecutor = null;
+
+		Pool(final String name, final int threads)
+		{
+			mName = name;
+			mThreads = threads;
+		}
+
+		private synchronized ThreadPoolExecutor getExecutor()
+		{
+			if (mExecutor == null) {
+				mExecutor = new ThreadPoolExecutor(mThreads, mThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+						runnable -> new Thread(runnable, "simlar-" + mName + '-' + mThreadCount.incrementAndGet()));
+				mExecutor.allowCoreThreadTimeOut(true);
+			}
+			return mExecutor;
+		}
+
+		public int getThreads()
+		{
+			return mThreads;
+		}
+
+		public int getQueueDepth()
+		{
+			return getExecutor().getQueue().size();
+		}
+
+		private void onTaskFinished(final long queueLatency, final long runTime)
+		{
+			mExecuted.incrementAndGet();
+			mTotalQueueLatency.addAndGet(queueLatency);
+			mTotalRunTime.addAndGet(runTime);
+			long max = mMaxQueueLatency.get();
+			while (queueLatency > max && !mMaxQueueLatency.compareAndSet(max, queueLatency)) {
+				max = mMaxQueueLatency.get();
+			}
+		}
+	}
+
+	public enum Priority
+	{
+		CALL(Process.THREAD_PRIORITY_DEFAULT),
+		USER_INTERACTIVE(Process.THREAD_PRIORITY_DEFAULT),
+		BACKGROUND(Process.THREAD_PRIORITY_BACKGROUND);
+
+		private final int mThreadPriority;
+
+		Priority(final int threadPriority)
+		{
+			mThreadPriority = threadPriority;
+		}
+	}
+
+	private Scheduler()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask>
+	{
+		private final Pool mPool;
+		private final Priority mPriority;
+		private final Runnable mRunnable;
+		private final long mSequence = Scheduler.mSequence.incrementAndGet();
+		private final long mCreated = System.nanoTime();
+
+		PrioritizedTask(final Pool pool, final Priority priority, final Runnable runnable)
+		{
+			mPool = pool;
+			mPriority = priority;
+			mRunnable = runnable;
+		}
+
+		@Override
+		public int compareTo(final PrioritizedTask other)
+		{
+			final int result = mPriority.compareTo(other.mPriority);
+			return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+		}
+
+		@Override
+		public void run()
+		{
+			final long started = System.nanoTime();
+			final long queueLatency = TimeUnit.NANOSECONDS.toMillis(started - mCreated);
+			if (queueLatency > SLOW_START_MILLISECONDS) {
+				Lg.w("task with priority ", mPriority, " waited ", queueLatency, "ms in pool ", mPool.mName);
+			}
+
+			Process.setThreadPriority(mPriority.mThreadPriority);
+			try {
+				mRunnable.run();
+			} finally {
+				mPool.onTaskFinished(queueLatency, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+			}
+		}
+	}
+
+	public static void execute(final Pool pool, final Priority priority, final Runnable runnable)
+	{
+		pool.getExecutor().execute(new PrioritizedTask(pool, priority, runnable));
+	}
+
+	public static Future<?> submit(final Pool pool, final Priority priority, final Runnable runnable)
+	{
+		final FutureTask<?> future = new FutureTask<>(runnable, null);
+		execute(pool, priority, future);
+		return future;
+	}
+
+	public static <T> Future<T> submit(final Pool pool, final Priority priority, final Callable<T> callable)
+	{
+		final FutureTask<T> future = new FutureTask<>(callable);
+		execute(pool, priority, future);
+		return future;
+	}
+
+	// hands the runnable to the executor after the delay, so no pool thread is blocked while waiting
+	public static ScheduledFuture<?> schedule(final Executor executor, final long delayMilliSeconds, final Runnable runnable)
+	{
+		return getTimer().schedule(() -> executor.execute(runnable), delayMilliSeconds, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor getTimer()
+	{
+		if (mTimer == null) {
+			// the timer only hands over tasks, so one daemon thread is enough and it never keeps the process alive
+			mTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+				final Thread thread = new Thread(runnable, "simlar-timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			mTimer.setRemoveOnCancelPolicy(true);
+		}
+		return mTimer;
+	}
+
+	// runs the tasks one after another in submission order on the given pool
+	public static Executor createSerialExecutor(final Pool pool, final Priority priority)
+	{
+		return new SerialExecutor(pool, priority);
+	}
+
+	private static final class SerialExecutor implements Executor
+	{
+		private final Pool mPool;
+		private final Priority mPriority;
+		private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+		private boolean mActive = false;
+
+		SerialExecutor(final Pool pool, final Priority priority)
+		{
+			mPool = pool;
+			mPriority = priority;
+		}
+
+		@Override
+		public synchronized void execute(@NonNull final Runnable runnable)
+		{
+			mTasks.add(() -> {
+				try {
+					runnable.run();
+				} finally {
+					scheduleNext();
+				}
+			});
+
+			if (!mActive) {
+				scheduleNext();
+			}
+		}
+
+		private synchronized void scheduleNext()
+		{
+			final Runnable next = mTasks.poll();
+			mActive = next != null;
+			if (next != null) {
+				Scheduler.execute(mPool, mPriority, next);
+			}
+		}
+	}
+
+	public static void logStatistics()
+	{
+		for (final Pool pool : Pool.values()) {
+			final long executed = pool.mExecuted.get();
+			Lg.i("scheduler pool ", pool.mName, ": threads=", pool.mThreads, " queue depth=", pool.getQueueDepth(), " executed=", executed,
+					" average queue latency=", executed == 0 ? 0 : pool.mTotalQueueLatency.get() / executed, "ms",
+					" max queue latency=", pool.mMaxQueueLatency.get(), "ms",
+					" average run time=", executed == 0 ? 0 : pool.mTotalRunTime.get() / executed, "ms");
+		}
+	}
+}
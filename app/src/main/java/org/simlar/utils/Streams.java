@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.utils;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/// Stream copies with pooled buffers. Copies between files use FileChannel.transferTo, which lets the kernel move the bytes.
+public final class Streams
+{
+	private Streams()
+	{
+		throw new AssertionError("This class was not meant to be instantiated");
+	}
+
+	/// copies until the end of the input stream with a pooled buffer of bufferSize, returns the number of bytes copied
+	public static long copy(final InputStream is, final OutputStream os, final int bufferSize) throws IOException
+	{
+		if (is instanceof FileInputStream && os instanceof FileOutputStream) {
+			final FileChannel source = ((FileInputStream) is).getChannel();
+			final long position = source.position();
+			final long transferred = transfer(source, position, source.size() - position, ((FileOutputStream) os).getChannel());
+			source.position(position + transferred);
+			return transferred;
+		}
+
+		final byte[] buffer = BufferPool.acquire(bufferSize);
+		try {
+			long copied = 0;
+			int length;
+			while ((length = is.read(buffer)) != -1) {
+				os.write(buffer, 0, length);
+				copied += length;
+			}
+			return copied;
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	public static long copy(final InputStream is, final OutputStream os) throws IOException
+	{
+		return copy(is, os, BufferPool.MEDIUM);
+	}
+
+	/// like copy but fails once more than maxBytes are read, e.g. for network streams of unknown size
+	public static long copyBounded(final InputStream is, final OutputStream os, final long maxBytes) throws IOException
+	{
+		final byte[] buffer = BufferPool.acquire(BufferPool.MEDIUM);
+		try {
+			long copied = 0;
+			int length;
+			while ((length = is.read(buffer)) != -1) {
+				copied += length;
+				if (copied > maxBytes) {
+					throw new IOException("stream exceeds " + maxBytes + " bytes");
+				}
+				os.write(buffer, 0, length);
+			}
+			return copied;
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	/// reads and discards at most maxBytes, returns the number of bytes read
+	public static long drain(final InputStream is, final long maxBytes) throws IOException
+	{
+		final byte[] buffer = BufferPool.acquire(BufferPool.SMALL);
+		try {
+			long drained = 0;
+			int length;
+			while (drained < maxBytes && (length = is.read(buffer, 0, (int) Math.min(buffer.length, maxBytes - drained))) != -1) {
+				drained += length;
+			}
+			return drained;
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	/// transfers count bytes starting at position of source to the current position of target
+	public static long transfer(final FileChannel source, final long position, final long count, final FileChannel target) throws IOException
+	{
+		long transferred = 0;
+		while (transferred < count) {
+			final long length = source.transferTo(position + transferred, count - transferred, target);
+			if (length <= 0) {
+				break;
+			}
+			transferred += length;
+		}
+		return transferred;
+	}
+}
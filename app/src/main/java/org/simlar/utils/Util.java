@@ -34,9 +34,6 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -45,7 +42,6 @@ import java.util.TimeZone;
 public final class Util
 {
 	public static final String[] EMPTY_STRING_ARRAY = {};
-	private static final int MAX_BUFFER_SIZE = 1024 * 1024;
 
 	private Util()
 	{
@@ -85,15 +81,6 @@ public final class Util
 		return lhs == rhs || lhs != null && lhs.equals(rhs);
 	}
 
-	public static void copyStream(final InputStream is, final OutputStream os) throws IOException
-	{
-		final byte[] buffer = new byte[MAX_BUFFER_SIZE];
-		int length;
-		while ((length = is.read(buffer)) != -1) {
-			os.write(buffer, 0, length);
-		}
-	}
-
 	public static Spanned fromHtml(final String string)
 	{
 		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? Html.fromHtml(string, Html.FROM_HTML_MODE_LEGACY) : Html.fromHtml(string);
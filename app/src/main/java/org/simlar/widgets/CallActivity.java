@@ -57,6 +57,7 @@ import org.simlar.service.AudioOutputType;
 import org.simlar.service.SimlarCallState;
 import org.simlar.service.SimlarService;
 import org.simlar.service.SimlarServiceCommunicator;
+import org.simlar.service.SimlarStateStore;
 import org.simlar.utils.Util;
 
 public final class CallActivity extends AppCompatActivity implements VolumesControlDialogFragment.Listener, VideoFragment.Listener
@@ -303,7 +304,7 @@ public final class CallActivity extends AppCompatActivity implements VolumesCont
 			return;
 		}
 
-		final SimlarCallState simlarCallState = mCommunicator.getService().getSimlarCallState();
+		final SimlarCallState simlarCallState = SimlarStateStore.getSnapshot().getSimlarCallState();
 		if (simlarCallState == null || simlarCallState.isEmpty()) {
 			Lg.e("ERROR: onSimlarCallStateChanged simlarCallState null or empty");
 			return;
@@ -361,7 +362,7 @@ public final class CallActivity extends AppCompatActivity implements VolumesCont
 			return;
 		}
 
-		mConnectionDetailsDialogFragment.setCallConnectionDetails(mCommunicator.getService().getCallConnectionDetails());
+		mConnectionDetailsDialogFragment.setCallConnectionDetails(SimlarStateStore.getSnapshot().getCallConnectionDetails());
 	}
 
 	private void onVideoStateChanged(final VideoState videoState)
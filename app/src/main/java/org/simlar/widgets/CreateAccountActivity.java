@@ -39,8 +39,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import java.util.Calendar;
 import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 import org.simlar.R;
 import org.simlar.helper.CreateAccountMessage;
@@ -48,10 +47,13 @@ import org.simlar.helper.CreateAccountStatus;
 import org.simlar.helper.FlavourHelper;
 import org.simlar.helper.PreferencesHelper;
 import org.simlar.helper.SimlarNumber;
+import org.simlar.https.CancellationToken;
 import org.simlar.https.CreateAccount;
 import org.simlar.logging.Lg;
 import org.simlar.service.SimlarServiceCommunicator;
+import org.simlar.service.SimlarStateStore;
 import org.simlar.service.SimlarStatus;
+import org.simlar.utils.Scheduler;
 import org.simlar.utils.Util;
 
 public final class CreateAccountActivity extends AppCompatActivity
@@ -70,7 +72,8 @@ public final class CreateAccountActivity extends AppCompatActivity
 	private Button mButtonCall = null;
 
 	private final Handler mHandler = new Handler(Looper.getMainLooper());
-	private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+	private final Executor executorService = Scheduler.createSerialExecutor(Scheduler.Pool.NETWORK, Scheduler.Priority.USER_INTERACTIVE);
+	private final CancellationToken mCancellationToken = new CancellationToken();
 
 	private final SimlarServiceCommunicator mCommunicator = new SimlarServiceCommunicatorCreateAccount();
 	private String mTelephoneNumber = "";
@@ -82,7 +85,7 @@ public final class CreateAccountActivity extends AppCompatActivity
 		@Override
 		public void onSimlarStatusChanged()
 		{
-			final SimlarStatus status = getService().getSimlarStatus();
+			final SimlarStatus status = SimlarStateStore.getSnapshot().getSimlarStatus();
 			Lg.i("onSimlarStatusChanged: ", status);
 
 			if (status.isConnectedToSipServer() || status.isRegistrationAtSipServerFailed()) {
@@ -228,6 +231,14 @@ public final class CreateAccountActivity extends AppCompatActivity
 		super.onStop();
 	}
 
+	@Override
+	protected void onDestroy()
+	{
+		Lg.i("onDestroy");
+		mCancellationToken.cancel();
+		super.onDestroy();
+	}
+
 	private void createAccountRequest()
 	{
 		if (Util.isNullOrEmpty(mTelephoneNumber)) {
@@ -242,7 +253,7 @@ public final class CreateAccountActivity extends AppCompatActivity
 		final String telephoneNumber = mTelephoneNumber;
 
 		executorService.execute(() -> {
-			final CreateAccount.RequestResult result = CreateAccount.httpPostRequest(telephoneNumber, smsText);
+			final CreateAccount.RequestResult result = CreateAccount.httpPostRequest(telephoneNumber, smsText, mCancellationToken);
 
 			mHandler.post(() -> {
 				mProgressRequest.setVisibility(View.INVISIBLE);
@@ -281,7 +292,7 @@ public final class CreateAccountActivity extends AppCompatActivity
 		}
 
 		executorService.execute(() -> {
-			final CreateAccount.ConfirmResult result = CreateAccount.httpPostConfirm(simlarId, registrationCode);
+			final CreateAccount.ConfirmResult result = CreateAccount.httpPostConfirm(simlarId, registrationCode, mCancellationToken);
 
 			mHandler.post(() -> {
 				mProgressConfirm.setVisibility(View.INVISIBLE);
@@ -398,7 +409,7 @@ public final class CreateAccountActivity extends AppCompatActivity
 		mProgressRequest.setVisibility(View.VISIBLE);
 
 		executorService.execute(() -> {
-			final CreateAccount.RequestResult result = CreateAccount.httpPostCall(telephoneNumber, PreferencesHelper.getPassword());
+			final CreateAccount.RequestResult result = CreateAccount.httpPostCall(telephoneNumber, PreferencesHelper.getPassword(), mCancellationToken);
 
 			mHandler.post(() -> {
 				mProgressRequest.setVisibility(View.INVISIBLE);
@@ -40,7 +40,6 @@ import androidx.fragment.app.FragmentManager;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import java.util.concurrent.Executors;
 
 import org.simlar.R;
 import org.simlar.contactsprovider.ContactsProvider;
@@ -53,15 +52,20 @@ import org.simlar.helper.Version;
 import org.simlar.https.DeleteAccount;
 import org.simlar.https.UploadLogFile;
 import org.simlar.logging.Lg;
+import org.simlar.logging.Tracer;
 import org.simlar.service.SimlarService;
 import org.simlar.service.SimlarServiceCommunicator;
+import org.simlar.utils.Scheduler;
 import org.simlar.utils.Util;
 
 public final class MainActivity extends AppCompatActivity implements NoContactPermissionFragment.Listener
 {
+	private static final String CONTACTS_VISIBLE_SPAN = "launch to contacts visible";
+
 	private ContactsAdapter mAdapter = null;
 	private ContactsListFragment mContactList = null;
 	private NoContactPermissionFragment mNoContactPermissionFragment = null;
+	private UploadLogFile mUploadLogFile = null;
 
 	private final SimlarServiceCommunicator mCommunicator = FlavourHelper.isGcmEnabled() ? null : new SimlarServiceCommunicatorContacts();
 
@@ -81,6 +85,7 @@ public final class MainActivity extends AppCompatActivity implements NoContactPe
 	{
 		super.onCreate(savedInstanceState);
 		Lg.i("onCreate ", savedInstanceState);
+		Tracer.beginOnce(CONTACTS_VISIBLE_SPAN);
 
 		setContentView(R.layout.activity_main);
 		WindowCompat.setDecorFitsSystemWindows(getWindow(), false);
@@ -174,6 +179,7 @@ public final class MainActivity extends AppCompatActivity implements NoContactPe
 				case NONE -> {
 					mAdapter.setContacts(contacts);
 					mContactList.setEmptyText(getString(R.string.main_activity_contact_list_no_contacts_found));
+					Tracer.endOnce(CONTACTS_VISIBLE_SPAN);
 				}
 				case BUG -> {
 					mAdapter.clear();
@@ -262,6 +268,19 @@ public final class MainActivity extends AppCompatActivity implements NoContactPe
 		super.onStop();
 	}
 
+	@Override
+	protected void onDestroy()
+	{
+		Lg.i("onDestroy");
+
+		if (mUploadLogFile != null) {
+			mUploadLogFile.destroy();
+			mUploadLogFile = null;
+		}
+
+		super.onDestroy();
+	}
+
 	@Override
 	public boolean onCreateOptionsMenu(final Menu menu)
 	{
@@ -396,7 +415,13 @@ public final class MainActivity extends AppCompatActivity implements NoContactPe
 				.setTitle(R.string.main_activity_alert_upload_log_file_title)
 				.setMessage(R.string.main_activity_alert_upload_log_file_text)
 				.setNegativeButton(R.string.button_cancel, null)
-				.setPositiveButton(R.string.button_continue, (dialog, id) -> new UploadLogFile(this).upload(logFileName))
+				.setPositiveButton(R.string.button_continue, (dialog, id) -> {
+					if (mUploadLogFile != null) {
+						mUploadLogFile.destroy();
+					}
+					mUploadLogFile = new UploadLogFile(this);
+					mUploadLogFile.upload(logFileName);
+				})
 				.create().show();
 	}
 
@@ -425,7 +450,7 @@ public final class MainActivity extends AppCompatActivity implements NoContactPe
 				.setTitle(R.string.main_activity_alert_delete_account_title)
 				.setMessage(R.string.main_activity_alert_delete_account_text)
 				.setNegativeButton(R.string.button_cancel, null)
-				.setPositiveButton(R.string.button_continue, (dialog, id) -> Executors.newSingleThreadExecutor().execute(() -> {
+				.setPositiveButton(R.string.button_continue, (dialog, id) -> Scheduler.execute(Scheduler.Pool.NETWORK, Scheduler.Priority.USER_INTERACTIVE, () -> {
 					final boolean success = DeleteAccount.httpPostDeleteAccount();
 					Lg.i("delete account success: ", success);
 
@@ -43,6 +43,7 @@ import org.simlar.R;
 import org.simlar.logging.Lg;
 import org.simlar.service.SimlarCallState;
 import org.simlar.service.SimlarServiceCommunicator;
+import org.simlar.service.SimlarStateStore;
 import org.simlar.utils.Util;
 
 public final class RingingActivity extends AppCompatActivity
@@ -211,7 +212,7 @@ public final class RingingActivity extends AppCompatActivity
 			return;
 		}
 
-		final SimlarCallState simlarCallState = mCommunicator.getService().getSimlarCallState();
+		final SimlarCallState simlarCallState = SimlarStateStore.getSnapshot().getSimlarCallState();
 		if (simlarCallState == null || simlarCallState.isEmpty()) {
 			Lg.e("ERROR: onSimlarCallStateChanged simlarCallState null or empty");
 			return;
@@ -20,16 +20,10 @@
 
 package org.simlar.https;
 
-import android.util.Xml;
-
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-
 import org.simlar.helper.PreferencesHelper;
 import org.simlar.helper.PreferencesHelper.NotInitedException;
 import org.simlar.logging.Lg;
@@ -62,54 +56,41 @@ public final class StorePushId
 				return false;
 			}
 
-			boolean success = false;
-			try {
-				success = parseXml(result, pushId);
-			} catch (final XmlPullParserException e) {
-				Lg.ex(e, "parsing xml failed");
-			} catch (final IOException e) {
-				Lg.ex(e, "IOException in InputStream of HttpsPost");
-			}
-
 			try {
-				result.close();
-			} catch (final IOException e) {
-				Lg.ex(e, "IOException during close");
+				return Boolean.TRUE.equals(XmlResponseDecoder.decodeAndClose(result, new SuccessHandler(pushId)));
+			} catch (final SimlarErrorException e) {
+				// already logged by XmlResponseDecoder
+				return false;
 			}
-
-			return success;
-
 		} catch (final NotInitedException e) {
 			Lg.ex(e, "PreferencesHelper.NotInitedException");
 			return false;
 		}
 	}
 
-	private static boolean parseXml(final InputStream inputStream, final String pushId) throws XmlPullParserException, IOException
+	private static final class SuccessHandler implements XmlResponseDecoder.Handler<Boolean>
 	{
-		final XmlPullParser parser = Xml.newPullParser();
-		parser.setInput(inputStream, null);
-		parser.nextTag();
+		private final String mPushId;
+		private boolean mSuccess = false;
 
-		final String xmlRootElement = parser.getName();
-		if ("error".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 2
-				&& "id".equalsIgnoreCase(parser.getAttributeName(0))
-				&& "message".equalsIgnoreCase(parser.getAttributeName(1))) {
-			Lg.e("server returned error: ", parser.getAttributeValue(1));
-			return false;
+		SuccessHandler(final String pushId)
+		{
+			mPushId = pushId;
 		}
 
-		if ("success".equalsIgnoreCase(xmlRootElement)
-				&& parser.getAttributeCount() >= 2
-				&& "deviceType".equalsIgnoreCase(parser.getAttributeName(0))
-				&& parser.getAttributeValue(0).equals(Integer.toString(DEVICE_TYPE_ANDROID))
-				&& "pushId".equalsIgnoreCase(parser.getAttributeName(1))
-				&& parser.getAttributeValue(1).equals(pushId)) {
-			return true;
+		@Override
+		public boolean onRoot(final XmlResponseDecoder.Element root)
+		{
+			mSuccess = root.is("success")
+					&& root.hasAttribute("deviceType", Integer.toString(DEVICE_TYPE_ANDROID))
+					&& root.hasAttribute("pushId", mPushId);
+			return mSuccess;
 		}
 
-		Lg.e("parse error: ", parser.getPositionDescription());
-		return false;
+		@Override
+		public Boolean getResult()
+		{
+			return mSuccess;
+		}
 	}
 }
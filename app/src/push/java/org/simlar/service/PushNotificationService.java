@@ -35,6 +35,8 @@ import com.google.firebase.messaging.RemoteMessage;
 import org.simlar.R;
 import org.simlar.https.StorePushId;
 import org.simlar.logging.Lg;
+import org.simlar.service.liblinphone.LinphoneManager;
+import org.simlar.utils.Scheduler;
 import org.simlar.utils.Util;
 
 public final class PushNotificationService extends FirebaseMessagingService
@@ -52,6 +54,7 @@ public final class PushNotificationService extends FirebaseMessagingService
 				" priority: ", remoteMessage.getPriority(), " (", remoteMessage.getOriginalPriority(), ")",
 				" notification: ", remoteMessage.getNotification() == null ? null : remoteMessage.getNotification().getBody());
 
+		LinphoneManager.prewarm();
 		ContextCompat.startForegroundService(this, new Intent(this, SimlarService.class));
 	}
 
@@ -69,14 +72,14 @@ public final class PushNotificationService extends FirebaseMessagingService
 			return;
 		}
 
-		new Thread(() -> {
+		Scheduler.execute(Scheduler.Pool.NETWORK, Scheduler.Priority.BACKGROUND, () -> {
 			if (!StorePushId.httpPostStorePushId(token)) {
 				Lg.e("failed to store push notification token=", token, " on simlar server");
 				return;
 			}
 
 			Lg.i("push notification token=", token, " stored on simlar server");
-		}).start();
+		});
 	}
 
 	public static void refreshTokenOnServer(final Context context)
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.contactsprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.simlar.helper.ContactStatus;
+
+public final class ContactStatusStoreTest
+{
+	private static final String MY_SIMLAR_ID = "*0001*";
+	private static final long TTL = 60 * 1000;
+	private static final long START = 1_000_000;
+
+	// answers like the server would, registered are all simlarIds ending with an odd digit
+	private static Map<String, ContactStatus> requestFromServer(final Set<String> simlarIds)
+	{
+		final Map<String, ContactStatus> result = new HashMap<>();
+		for (final String simlarId : simlarIds) {
+			final boolean odd = (simlarId.charAt(simlarId.length() - 2) - '0') % 2 == 1;
+			result.put(simlarId, odd ? ContactStatus.REGISTERED : ContactStatus.NOT_REGISTERED);
+		}
+		return result;
+	}
+
+	private static Set<String> createSimlarIds(final int from, final int to)
+	{
+		final Set<String> simlarIds = new HashSet<>();
+		for (int i = from; i < to; ++i) {
+			simlarIds.add("*49" + i + "*");
+		}
+		return simlarIds;
+	}
+
+	private static ContactStatusStore createStore()
+	{
+		final ContactStatusStore store = new ContactStatusStore();
+		store.setTtl(TTL);
+		return store;
+	}
+
+	// does what ContactsProvider does and returns the simlarIds requested from the server
+	private static Set<String> requestStatus(final ContactStatusStore store, final String mySimlarId, final Set<String> simlarIds, final long now)
+	{
+		final Map<String, ContactStatus> valid = new HashMap<>();
+		final Set<String> stale = new HashSet<>();
+		store.partition(mySimlarId, simlarIds, valid, stale, now);
+		store.update(requestFromServer(stale), now);
+		return stale;
+	}
+
+	@Test
+	public void unknownContactsAreStale()
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> simlarIds = createSimlarIds(0, 10);
+
+		assertEquals(simlarIds, requestStatus(store, MY_SIMLAR_ID, simlarIds, START));
+		assertTrue(requestStatus(store, MY_SIMLAR_ID, simlarIds, START + 1).isEmpty());
+	}
+
+	@Test
+	public void statusExpiresAfterTtl()
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> simlarIds = createSimlarIds(0, 10);
+		requestStatus(store, MY_SIMLAR_ID, simlarIds, START);
+
+		final Map<String, ContactStatus> valid = new HashMap<>();
+		final Set<String> stale = new HashSet<>();
+		store.partition(MY_SIMLAR_ID, simlarIds, valid, stale, START + TTL - 1);
+		assertEquals(requestFromServer(simlarIds), valid);
+		assertTrue(stale.isEmpty());
+
+		valid.clear();
+		store.partition(MY_SIMLAR_ID, simlarIds, valid, stale, START + TTL);
+		assertTrue(valid.isEmpty());
+		assertEquals(simlarIds, stale);
+	}
+
+	@Test
+	public void onlyNewAndExpiredContactsAreStale()
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> old = createSimlarIds(0, 5);
+		final Set<String> fresh = createSimlarIds(5, 10);
+		final Set<String> added = createSimlarIds(10, 15);
+		requestStatus(store, MY_SIMLAR_ID, old, START);
+		requestStatus(store, MY_SIMLAR_ID, fresh, START + TTL / 2);
+
+		final Set<String> simlarIds = new HashSet<>(old);
+		simlarIds.addAll(fresh);
+		simlarIds.addAll(added);
+
+		final Map<String, ContactStatus> valid = new HashMap<>();
+		final Set<String> stale = new HashSet<>();
+		store.partition(MY_SIMLAR_ID, simlarIds, valid, stale, START + TTL);
+
+		assertEquals(requestFromServer(fresh), valid);
+		final Set<String> expectedStale = new HashSet<>(old);
+		expectedStale.addAll(added);
+		assertEquals(expectedStale, stale);
+	}
+
+	@Test
+	public void unknownStatusAndFutureTimestampsAreStale()
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> simlarIds = createSimlarIds(0, 2);
+		store.partition(MY_SIMLAR_ID, simlarIds, new HashMap<>(), new HashSet<>(), START);
+		final Map<String, ContactStatus> serverStatus = new HashMap<>();
+		serverStatus.put("*490*", ContactStatus.UNKNOWN);
+		serverStatus.put("*491*", ContactStatus.REGISTERED);
+		store.update(serverStatus, START);
+
+		final Map<String, ContactStatus> valid = new HashMap<>();
+		final Set<String> stale = new HashSet<>();
+		store.partition(MY_SIMLAR_ID, simlarIds, valid, stale, START + 1);
+		assertEquals(Map.of("*491*", ContactStatus.REGISTERED), valid);
+		assertEquals(Set.of("*490*"), stale);
+
+		// the clock went backwards
+		valid.clear();
+		stale.clear();
+		store.partition(MY_SIMLAR_ID, simlarIds, valid, stale, START - 1);
+		assertTrue(valid.isEmpty());
+		assertEquals(simlarIds, stale);
+	}
+
+	@Test
+	public void invalidateAndAccountChangeDropAllStatus()
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> simlarIds = createSimlarIds(0, 10);
+		requestStatus(store, MY_SIMLAR_ID, simlarIds, START);
+		assertEquals(simlarIds, requestStatus(store, "*0002*", simlarIds, START));
+		assertTrue(requestStatus(store, "*0002*", simlarIds, START).isEmpty());
+
+		store.invalidate();
+		assertEquals(simlarIds, requestStatus(store, "*0002*", simlarIds, START));
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.contactsprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.simlar.helper.ContactStatus;
+import org.simlar.https.FakeContactsStatusServer;
+import org.simlar.https.GetContactsStatus;
+import org.simlar.https.SimlarErrorException;
+
+/// Runs the contacts status request like ContactsProvider does: the store picks the stale contacts, GetContactsStatus
+/// requests them in chunks from a stand-in server and the store persists the answers.
+public final class ContactsStatusRequestTest
+{
+	private static final String MY_SIMLAR_ID = "*0001*";
+	private static final long TTL = 60 * 1000;
+	private static final long START = 1_000_000;
+	private static final int CHUNK_SIZE = 500;
+
+	private final FakeContactsStatusServer mServer = new FakeContactsStatusServer();
+	private File mFile = null;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		mFile = File.createTempFile("contacts_status", ".bin");
+		if (!mFile.delete()) {
+			throw new IOException("failed to delete " + mFile);
+		}
+		mServer.install();
+	}
+
+	@After
+	public void tearDown()
+	{
+		mServer.uninstall();
+		if (mFile.exists() && !mFile.delete()) {
+			mFile.deleteOnExit();
+		}
+	}
+
+	private ContactStatusStore createStore()
+	{
+		final ContactStatusStore store = new ContactStatusStore(mFile);
+		store.setTtl(TTL);
+		return store;
+	}
+
+	private static Set<String> createSimlarIds(final int from, final int to)
+	{
+		final Set<String> simlarIds = new HashSet<>();
+		for (int i = from; i < to; ++i) {
+			simlarIds.add("*49" + i + "*");
+		}
+		return simlarIds;
+	}
+
+	private static Map<String, ContactStatus> expectedStatus(final Set<String> simlarIds)
+	{
+		final Map<String, ContactStatus> result = new HashMap<>();
+		for (final String simlarId : simlarIds) {
+			result.put(simlarId, FakeContactsStatusServer.isRegistered(simlarId) ? ContactStatus.REGISTERED : ContactStatus.NOT_REGISTERED);
+		}
+		return result;
+	}
+
+	private Set<String> getRequestedSimlarIds()
+	{
+		final Set<String> result = new HashSet<>();
+		for (final List<String> request : mServer.getRequests()) {
+			assertTrue(request.size() <= CHUNK_SIZE);
+			result.addAll(request);
+		}
+		return result;
+	}
+
+	// does what ContactsProvider does and returns the status of all simlarIds
+	private static Map<String, ContactStatus> requestStatus(final ContactStatusStore store, final Set<String> simlarIds, final long now)
+			throws SimlarErrorException
+	{
+		final Map<String, ContactStatus> valid = new HashMap<>();
+		final Set<String> stale = new HashSet<>();
+		store.partition(MY_SIMLAR_ID, simlarIds, valid, stale, now);
+
+		final Map<String, ContactStatus> result = GetContactsStatus.httpPostGetContactsStatus(stale, chunk -> store.update(chunk, now));
+		assertNotNull(result);
+		store.retainAndWrite(simlarIds);
+
+		result.putAll(valid);
+		return result;
+	}
+
+	@Test
+	public void requestsAllContactsInChunks() throws SimlarErrorException
+	{
+		final Set<String> simlarIds = createSimlarIds(0, 1234);
+		assertEquals(expectedStatus(simlarIds), requestStatus(createStore(), simlarIds, START));
+
+		assertEquals(3, mServer.getRequests().size());
+		assertEquals(simlarIds, getRequestedSimlarIds());
+	}
+
+	@Test
+	public void requestsOnlyNewAndExpiredContacts() throws SimlarErrorException
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> old = createSimlarIds(0, 600);
+		final Set<String> fresh = createSimlarIds(600, 1200);
+		final Set<String> added = createSimlarIds(1200, 1300);
+		requestStatus(store, old, START);
+		requestStatus(store, fresh, START + TTL / 2);
+		mServer.clearRequests();
+
+		final Set<String> simlarIds = new HashSet<>(old);
+		simlarIds.addAll(fresh);
+		simlarIds.addAll(added);
+		assertEquals(expectedStatus(simlarIds), requestStatus(store, simlarIds, START + TTL));
+
+		final Set<String> expectedRequested = new HashSet<>(old);
+		expectedRequested.addAll(added);
+		assertEquals(expectedRequested, getRequestedSimlarIds());
+		assertEquals(2, mServer.getRequests().size());
+	}
+
+	@Test
+	public void persistedStatusIsNotRequestedAgain() throws SimlarErrorException
+	{
+		final Set<String> simlarIds = createSimlarIds(0, 700);
+		requestStatus(createStore(), simlarIds, START);
+		assertTrue(mFile.exists());
+		mServer.clearRequests();
+
+		// e.g. after a restart of the app
+		final Set<String> moreSimlarIds = new HashSet<>(simlarIds);
+		moreSimlarIds.addAll(createSimlarIds(700, 710));
+		assertEquals(expectedStatus(moreSimlarIds), requestStatus(createStore(), moreSimlarIds, START + 1));
+		assertEquals(createSimlarIds(700, 710), getRequestedSimlarIds());
+
+		// everything expired
+		mServer.clearRequests();
+		requestStatus(createStore(), moreSimlarIds, START + TTL + 1);
+		assertEquals(moreSimlarIds, getRequestedSimlarIds());
+	}
+
+	@Test
+	public void nothingIsRequestedIfAllStatusIsValid() throws SimlarErrorException
+	{
+		final ContactStatusStore store = createStore();
+		final Set<String> simlarIds = createSimlarIds(0, 10);
+		requestStatus(store, simlarIds, START);
+		mServer.clearRequests();
+
+		assertEquals(expectedStatus(simlarIds), requestStatus(store, simlarIds, START + 1));
+		assertTrue(mServer.getRequests().isEmpty());
+	}
+}
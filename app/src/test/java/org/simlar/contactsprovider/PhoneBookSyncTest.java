@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.contactsprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.simlar.helper.ContactData;
+import org.simlar.helper.SimlarNumber;
+
+public final class PhoneBookSyncTest
+{
+	private static final String MY_SIMLAR_ID = "*491710000000*";
+	private static final int CONTACTS = 700; // several batches
+
+	private static final class Row
+	{
+		final long contactId;
+		final String number;
+		final String name;
+
+		Row(final long contactId, final String number, final String name)
+		{
+			this.contactId = contactId;
+			this.number = number;
+			this.name = name;
+		}
+	}
+
+	@Before
+	public void setUp()
+	{
+		SimlarNumber.setDefaultRegion(49);
+	}
+
+	// some contacts share numbers, some have no name, some numbers are not parsable and one is my own
+	private static List<Row> createRows(final String namePrefix)
+	{
+		final List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < CONTACTS; ++i) {
+			final String number = String.format(Locale.US, "+49 171 %07d", i % 500 + 1);
+			rows.add(new Row(i, number, i % 7 == 0 ? number : namePrefix + i));
+			if (i % 3 == 0) {
+				rows.add(new Row(i, String.format(Locale.US, "0171 %07d", i + 1000), namePrefix + i));
+			}
+			if (i % 50 == 0) {
+				rows.add(new Row(i, "not a number", namePrefix + i));
+			}
+		}
+		rows.add(new Row(CONTACTS, "+49 171 0000000", "me"));
+		return rows;
+	}
+
+	private static Map<Long, List<PhoneBookSync.PhoneEntry>> parse(final List<Row> rows, final boolean parallel)
+	{
+		final PhoneBookSync.PhoneRowParser parser = new PhoneBookSync.PhoneRowParser(parallel);
+		for (final Row row : rows) {
+			parser.add(row.contactId, row.number, row.name, false);
+		}
+
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> phones = new LinkedHashMap<>();
+		parser.finish(MY_SIMLAR_ID, phones);
+		return phones;
+	}
+
+	private static String formatPhones(final Map<Long, List<PhoneBookSync.PhoneEntry>> phones)
+	{
+		final StringBuilder result = new StringBuilder();
+		for (final Map.Entry<Long, List<PhoneBookSync.PhoneEntry>> contact : phones.entrySet()) {
+			for (final PhoneBookSync.PhoneEntry entry : contact.getValue()) {
+				result.append(contact.getKey()).append(' ').append(entry.simlarId).append(' ').append(entry.name).append(' ')
+						.append(entry.guiTelephoneNumber).append('\n');
+			}
+		}
+		return result.toString();
+	}
+
+	private static String formatContacts(final Map<String, ContactData> contacts)
+	{
+		final StringBuilder result = new StringBuilder();
+		for (final Map.Entry<String, ContactData> contact : new TreeMap<>(contacts).entrySet()) {
+			result.append(contact.getKey()).append(' ').append(contact.getValue().name).append(' ')
+					.append(contact.getValue().guiTelephoneNumber).append('\n');
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void parallelParsingEqualsSequentialParsing()
+	{
+		final List<Row> rows = createRows("name ");
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> sequential = parse(rows, false);
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> parallel = parse(rows, true);
+
+		assertFalse(sequential.isEmpty());
+		assertEquals(formatPhones(sequential), formatPhones(parallel));
+		assertEquals(new ArrayList<>(sequential.keySet()), new ArrayList<>(parallel.keySet()));
+	}
+
+	@Test
+	public void parsingSkipsMySimlarIdAndUnparsableNumbers()
+	{
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> phones = parse(createRows("name "), true);
+
+		assertFalse(phones.containsKey((long) CONTACTS));
+		for (final List<PhoneBookSync.PhoneEntry> entries : phones.values()) {
+			for (final PhoneBookSync.PhoneEntry entry : entries) {
+				assertFalse(entry.simlarId.isEmpty());
+			}
+		}
+		assertEquals("", phones.get(7L).get(0).name);
+	}
+
+	@Test
+	public void interruptedParsingIsCompleteAndKeepsTheInterruption()
+	{
+		final List<Row> rows = createRows("name ");
+		final String expected = formatPhones(parse(rows, false));
+
+		final PhoneBookSync.PhoneRowParser parser = new PhoneBookSync.PhoneRowParser(true);
+		for (final Row row : rows) {
+			parser.add(row.contactId, row.number, row.name, false);
+		}
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> phones = new LinkedHashMap<>();
+		Thread.currentThread().interrupt();
+		parser.finish(MY_SIMLAR_ID, phones);
+
+		assertTrue(Thread.interrupted());
+		assertEquals(expected, formatPhones(phones));
+	}
+
+	@Test
+	public void incrementalSyncEqualsFullSync()
+	{
+		final List<Row> oldRows = createRows("old ");
+		final Set<Long> deletedContactIds = new HashSet<>();
+		final Set<Long> updatedContactIds = new HashSet<>();
+		final List<Row> updatedRows = new ArrayList<>();
+		final List<Row> newRows = new ArrayList<>();
+		for (final Row row : oldRows) {
+			if (row.contactId % 11 == 0) {
+				deletedContactIds.add(row.contactId);
+			} else if (row.contactId % 5 == 0) {
+				// renamed contacts move to the end of an incremental sync
+				final Row updatedRow = new Row(row.contactId, row.number, row.name.startsWith("old ") ? "new " + row.contactId : row.name);
+				updatedContactIds.add(row.contactId);
+				updatedRows.add(updatedRow);
+				newRows.add(updatedRow);
+			} else {
+				newRows.add(row);
+			}
+		}
+
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> incremental = parse(oldRows, true);
+		PhoneBookSync.applyChanges(incremental, deletedContactIds, updatedContactIds, parse(updatedRows, true));
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> full = parse(newRows, true);
+
+		assertEquals(formatContacts(PhoneBookSync.createContacts(full)), formatContacts(PhoneBookSync.createContacts(incremental)));
+	}
+
+	@Test
+	public void sharedNumberKeepsNameOfLowestContactId()
+	{
+		final List<Row> rows = new ArrayList<>();
+		rows.add(new Row(3, "+49 171 1111111", "+49 171 1111111"));
+		rows.add(new Row(2, "+49 171 1111111", "Bob"));
+		rows.add(new Row(1, "0171 1111111", "Alice"));
+		final Map<Long, List<PhoneBookSync.PhoneEntry>> phones = parse(rows, false);
+
+		final Map<String, ContactData> contacts = PhoneBookSync.createContacts(phones);
+		assertEquals(1, contacts.size());
+		assertEquals("Alice", contacts.values().iterator().next().name);
+	}
+}
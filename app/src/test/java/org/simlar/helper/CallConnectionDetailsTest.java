@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public final class CallConnectionDetailsTest
+{
+	private static final String CODEC = "opus 48";
+	private static final String HOST = "host connection";
+	private static final String RELAY = "relay connection";
+	private static final String ENCRYPTION = "X25519 SHA256 AES3";
+
+	private static final class Stats
+	{
+		final NetworkQuality quality;
+		final String iceState;
+		final int upload;
+		final int download;
+		final int jitter;
+		final int packetLoss;
+		final long latePackets;
+		final int roundTripDelay;
+		final boolean changed;
+
+		Stats(final NetworkQuality quality, final String iceState, final int upload, final int download, final int jitter, final int packetLoss,
+		      final long latePackets, final int roundTripDelay, final boolean changed)
+		{
+			this.quality = quality;
+			this.iceState = iceState;
+			this.upload = upload;
+			this.download = download;
+			this.jitter = jitter;
+			this.packetLoss = packetLoss;
+			this.latePackets = latePackets;
+			this.roundTripDelay = roundTripDelay;
+			this.changed = changed;
+		}
+
+		boolean update(final CallConnectionDetails details)
+		{
+			return details.updateCallStats(quality, CODEC, iceState, upload, download, jitter, packetLoss, latePackets, roundTripDelay, ENCRYPTION);
+		}
+	}
+
+	// stats of one call recorded once per second, changed tells whether the ui has to be updated with the default thresholds
+	private static final Stats[] CALL = {
+			new Stats(NetworkQuality.GOOD, HOST, 300, 300, 20, 1, 1, 80, true),
+			new Stats(NetworkQuality.GOOD, HOST, 305, 295, 22, 2, 3, 85, false),
+			new Stats(NetworkQuality.GOOD, HOST, 329, 300, 24, 5, 10, 98, false),
+			new Stats(NetworkQuality.GOOD, HOST, 331, 300, 24, 5, 10, 98, true),
+			new Stats(NetworkQuality.AVERAGE, HOST, 331, 300, 24, 5, 10, 98, true),
+			new Stats(NetworkQuality.AVERAGE, HOST, 330, 301, 25, 5, 12, 99, false),
+			new Stats(NetworkQuality.AVERAGE, HOST, 330, 301, 25, 0, 12, 99, true),
+			new Stats(NetworkQuality.AVERAGE, RELAY, 330, 301, 25, 0, 12, 99, true),
+			new Stats(NetworkQuality.AVERAGE, RELAY, 330, 301, 31, 0, 12, 99, true),
+			new Stats(NetworkQuality.AVERAGE, RELAY, 330, 301, 31, 0, 12, 118, false),
+			new Stats(NetworkQuality.AVERAGE, RELAY, 330, 301, 31, 0, 12, 121, true),
+			new Stats(NetworkQuality.AVERAGE, RELAY, 330, 0, 31, 0, 12, 121, true),
+			new Stats(NetworkQuality.AVERAGE, RELAY, 330, 0, 31, 0, 12, 121, false),
+	};
+
+	@After
+	public void resetThresholds()
+	{
+		CallConnectionDetails.setThresholds(null);
+	}
+
+	@Test
+	public void recordedCallWithDefaultThresholds()
+	{
+		final CallConnectionDetails details = new CallConnectionDetails();
+		for (int i = 0; i < CALL.length; ++i) {
+			assertEquals("stats " + i, CALL[i].changed, CALL[i].update(details));
+		}
+	}
+
+	@Test
+	public void recordedCallWithoutThresholds()
+	{
+		CallConnectionDetails.setThresholds(CallConnectionDetails.Thresholds.NONE);
+		final CallConnectionDetails details = new CallConnectionDetails();
+		assertTrue(CALL[0].update(details));
+		for (int i = 1; i < CALL.length - 1; ++i) {
+			assertTrue("stats " + i, CALL[i].update(details));
+		}
+		assertFalse(CALL[CALL.length - 1].update(details));
+	}
+
+	@Test
+	public void reportedValuesAreKept()
+	{
+		final CallConnectionDetails details = new CallConnectionDetails();
+		for (final Stats stats : CALL) {
+			stats.update(details);
+		}
+
+		assertEquals(RELAY, details.getIceState());
+		assertEquals("0.0", details.getDownload());
+		assertEquals("31", details.getJitter());
+		assertEquals("121", details.getRoundTripDelay());
+		assertEquals("12", details.getLatePackets());
+	}
+}
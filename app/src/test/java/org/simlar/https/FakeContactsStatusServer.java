@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.kxml2.io.KXmlParser;
+
+/// Answers get-contacts-status requests like the server does, so tests in other packages can run GetContactsStatus
+/// without network. All simlarIds ending with an odd digit are registered.
+public final class FakeContactsStatusServer
+{
+	private final List<List<String>> mRequests = new ArrayList<>();
+
+	public void install()
+	{
+		XmlResponseDecoder.setParserFactory(KXmlParser::new);
+		GetContactsStatus.setTransport(this::post);
+	}
+
+	public void uninstall()
+	{
+		GetContactsStatus.setTransport(null);
+		XmlResponseDecoder.setParserFactory(null);
+	}
+
+	public static boolean isRegistered(final String simlarId)
+	{
+		return (simlarId.charAt(simlarId.length() - 2) - '0') % 2 == 1;
+	}
+
+	private synchronized ByteArrayInputStream post(final Collection<String> contacts)
+	{
+		mRequests.add(new ArrayList<>(contacts));
+
+		final StringBuilder response = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<contacts>\n");
+		for (final String simlarId : contacts) {
+			response.append("<contact id=\"").append(simlarId).append("\" status=\"").append(isRegistered(simlarId) ? 1 : 0).append("\"/>\n");
+		}
+		response.append("</contacts>\n");
+		return new ByteArrayInputStream(response.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/// the simlarIds of each request in order, one request per chunk
+	public synchronized List<List<String>> getRequests()
+	{
+		return new ArrayList<>(mRequests);
+	}
+
+	public synchronized void clearRequests()
+	{
+		mRequests.clear();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.simlar.utils.Streams;
+
+public final class LogUploadQueueTest
+{
+	private static final long TIMEOUT_SECONDS = 10;
+	private static final byte[] LOG = "some log lines\nand some more\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+	private File mDirectory = null;
+	private File mLogFile = null;
+	private final CountDownLatch mFinished = new CountDownLatch(1);
+	private final List<Integer> mProgress = new ArrayList<>();
+	private volatile boolean mSuccess = false;
+	// the queue only holds it weakly
+	private final LogUploadQueue.Listener mListener = new LogUploadQueue.Listener()
+	{
+		@Override
+		public void onProgress(final String uploadFileName, final int percent)
+		{
+			synchronized (mProgress) {
+				mProgress.add(percent);
+			}
+		}
+
+		@Override
+		public void onFinished(final String uploadFileName, final boolean success)
+		{
+			mSuccess = success;
+			mFinished.countDown();
+		}
+	};
+
+	// stands in for the server: answers with the given failures first and accepts the upload afterwards
+	private static final class FakeServer implements LogUploadQueue.Uploader
+	{
+		private final List<RetryPolicy.Failure> mFailures = new ArrayList<>();
+		private final List<String> mUploadFileNames = new ArrayList<>();
+		private byte[] mReceived = null;
+
+		FakeServer(final RetryPolicy.Failure... failures)
+		{
+			mFailures.addAll(List.of(failures));
+		}
+
+		@Override
+		public synchronized RetryPolicy.Failure upload(final File file, final String uploadFileName, final LogUploadQueue.ProgressListener progressListener)
+		{
+			mUploadFileNames.add(uploadFileName);
+			if (!mFailures.isEmpty()) {
+				return mFailures.remove(0);
+			}
+
+			progressListener.onProgress(50);
+			progressListener.onProgress(100);
+
+			try (final InputStream inputStream = new GZIPInputStream(new FileInputStream(file))) {
+				final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+				Streams.copy(inputStream, outputStream);
+				mReceived = outputStream.toByteArray();
+				return null;
+			} catch (final IOException e) {
+				return RetryPolicy.Failure.IO;
+			}
+		}
+
+		synchronized List<String> getUploadFileNames()
+		{
+			return new ArrayList<>(mUploadFileNames);
+		}
+
+		synchronized byte[] getReceived()
+		{
+			return mReceived;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException
+	{
+		mDirectory = Files.createTempDirectory("log_upload_queue").toFile();
+		mLogFile = File.createTempFile("log", ".txt");
+		Files.write(mLogFile.toPath(), LOG);
+		LogUploadQueue.setDirectory(mDirectory);
+		LogUploadQueue.setListener(mListener);
+	}
+
+	@After
+	public void tearDown()
+	{
+		LogUploadQueue.removeListener(mListener);
+		LogUploadQueue.setUploader(null);
+		LogUploadQueue.setDirectory(null);
+
+		final File[] files = mDirectory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				delete(file);
+			}
+		}
+		delete(mDirectory);
+		delete(mLogFile);
+	}
+
+	private static void delete(final File file)
+	{
+		if (file.exists() && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	private boolean awaitFinished() throws InterruptedException
+	{
+		return mFinished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void uploadsCompressedLogFile() throws InterruptedException
+	{
+		final FakeServer server = new FakeServer();
+		LogUploadQueue.setUploader(server);
+		LogUploadQueue.add(mLogFile, "success.gz");
+
+		assertTrue(awaitFinished());
+		assertTrue(mSuccess);
+		assertEquals(List.of("success.gz"), server.getUploadFileNames());
+		assertArrayEquals(LOG, server.getReceived());
+		assertFalse(mLogFile.exists());
+		assertEquals(0, mDirectory.list().length);
+		synchronized (mProgress) {
+			assertEquals(List.of(50, 100), mProgress);
+		}
+	}
+
+	@Test
+	public void retriesAfterServerError() throws InterruptedException
+	{
+		final FakeServer server = new FakeServer(RetryPolicy.Failure.SERVER_ERROR);
+		LogUploadQueue.setUploader(server);
+		LogUploadQueue.add(mLogFile, "retry.gz");
+
+		assertTrue(awaitFinished());
+		assertTrue(mSuccess);
+		assertEquals(List.of("retry.gz", "retry.gz"), server.getUploadFileNames());
+		assertArrayEquals(LOG, server.getReceived());
+		assertEquals(0, mDirectory.list().length);
+	}
+
+	@Test
+	public void keepsFileAfterClientError() throws InterruptedException
+	{
+		final FakeServer server = new FakeServer(RetryPolicy.Failure.CLIENT_ERROR);
+		LogUploadQueue.setUploader(server);
+		LogUploadQueue.add(mLogFile, "client_error.gz");
+
+		assertTrue(awaitFinished());
+		assertFalse(mSuccess);
+		assertEquals(List.of("client_error.gz"), server.getUploadFileNames());
+		assertFalse(mLogFile.exists());
+		assertArrayEquals(new String[] { "client_error.gz" }, mDirectory.list());
+	}
+}
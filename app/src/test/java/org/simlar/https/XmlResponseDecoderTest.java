@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.https;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+
+public final class XmlResponseDecoderTest
+{
+	private static final class TrackingInputStream extends ByteArrayInputStream
+	{
+		boolean closed = false;
+
+		TrackingInputStream(final String xml)
+		{
+			super(xml.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			closed = true;
+			super.close();
+		}
+	}
+
+	// collects the ids of all contact elements below a contacts root
+	private static final class ContactsHandler implements XmlResponseDecoder.Handler<List<String>>
+	{
+		private final List<String> mIds = new ArrayList<>();
+
+		@Override
+		public boolean onRoot(final XmlResponseDecoder.Element root)
+		{
+			return root.is("contacts");
+		}
+
+		@Override
+		public void onElement(final XmlResponseDecoder.Element element)
+		{
+			if (element.is("contact")) {
+				mIds.add(element.getAttribute("id") + '=' + element.getIntAttribute("status", -1));
+			}
+		}
+
+		@Override
+		public List<String> getResult()
+		{
+			return mIds;
+		}
+	}
+
+	private static List<String> decode(final String xml) throws SimlarErrorException
+	{
+		final TrackingInputStream inputStream = new TrackingInputStream(xml);
+		try {
+			return XmlResponseDecoder.decodeAndClose(inputStream, new ContactsHandler());
+		} finally {
+			assertTrue("stream not closed", inputStream.closed);
+		}
+	}
+
+	@Before
+	public void setUp()
+	{
+		XmlResponseDecoder.setParserFactory(KXmlParser::new);
+	}
+
+	@After
+	public void tearDown()
+	{
+		XmlResponseDecoder.setParserFactory(null);
+	}
+
+	@Test
+	public void contacts() throws SimlarErrorException
+	{
+		final List<String> ids = decode("""
+				<?xml version="1.0"?>
+				<contacts>
+					<contact id="*0001*" status="1"/>
+					<contact ID="*0002*" Status="0"/>
+					<other id="*0003*"/>
+				</contacts>""");
+		assertEquals(List.of("*0001*=1", "*0002*=0"), ids);
+	}
+
+	@Test
+	public void parserIsReused() throws SimlarErrorException
+	{
+		for (int i = 0; i < 3; ++i) {
+			assertEquals(List.of("*000" + i + "*=1"), decode("<contacts><contact id=\"*000" + i + "*\" status=\"1\"/></contacts>"));
+		}
+	}
+
+	@Test
+	public void error()
+	{
+		final SimlarErrorException exception = assertThrows(SimlarErrorException.class,
+				() -> decode("<?xml version=\"1.0\"?><error id=\"10\" message=\"wrong credentials\"/>"));
+		assertEquals(SimlarErrorException.WRONG_CREDENTIALS_ID, exception.getId());
+		assertEquals("wrong credentials", exception.getMessage());
+	}
+
+	@Test
+	public void errorAttributesInAnyOrder()
+	{
+		final SimlarErrorException exception = assertThrows(SimlarErrorException.class,
+				() -> decode("<error message=\"unknown\" id=\"42\"/>"));
+		assertEquals(42, exception.getId());
+	}
+
+	@Test
+	public void errorWithoutIdIsAParseFailure() throws SimlarErrorException
+	{
+		assertNull(decode("<error message=\"wrong credentials\"/>"));
+	}
+
+	@Test
+	public void errorWithBrokenIdIsAParseFailure() throws SimlarErrorException
+	{
+		assertNull(decode("<error id=\"ten\" message=\"wrong credentials\"/>"));
+		assertNull(decode("<error id=\"\" message=\"wrong credentials\"/>"));
+	}
+
+	@Test
+	public void errorWithoutMessageIsAParseFailure() throws SimlarErrorException
+	{
+		assertNull(decode("<error id=\"10\"/>"));
+	}
+
+	@Test
+	public void wrongRoot() throws SimlarErrorException
+	{
+		assertNull(decode("<success simlarId=\"*0001*\"/>"));
+	}
+
+	@Test
+	public void truncatedInput() throws SimlarErrorException
+	{
+		assertNull(decode("<contacts><contact id=\"*0001*\" status=\"1\"/><contact id=\"*00"));
+		assertNull(decode(""));
+
+		// the parser is still usable afterwards
+		assertEquals(List.of("*0001*=1"), decode("<contacts><contact id=\"*0001*\" status=\"1\"/></contacts>"));
+	}
+}
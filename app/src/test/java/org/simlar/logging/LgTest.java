@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.util.Log;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class LgTest
+{
+	private static final int TAG_SIZE = 23;
+	private static final int ALLOCATION_TEST_CALLS = 10000;
+	private static final long ALLOCATION_TEST_MAX_BYTES = 64 * 1024;
+
+	private final List<String> mTags = new ArrayList<>();
+
+	@Before
+	public void setUp()
+	{
+		Lg.setPrinter((priority, tag, message) -> mTags.add(tag));
+		Lg.setCallerTagging(true);
+		Lg.setLevel(Log.VERBOSE);
+	}
+
+	@After
+	public void tearDown()
+	{
+		Lg.setDebugMode(false);
+		Lg.setPrinter(null);
+	}
+
+	private static int getCallerLine()
+	{
+		return new Throwable().getStackTrace()[2].getLineNumber();
+	}
+
+	// checks that the last log line is tagged with the line calling this function
+	private void assertCallerTag()
+	{
+		final String expected = "(LgTest.java:" + getCallerLine() + ')';
+		assertEquals(1, mTags.size());
+		final String tag = mTags.remove(0);
+		assertEquals(TAG_SIZE, tag.length());
+		assertEquals(expected, tag.substring(0, expected.length()));
+		for (int i = expected.length(); i < TAG_SIZE; ++i) {
+			assertEquals('.', tag.charAt(i));
+		}
+	}
+
+	@Test
+	public void verboseOverloadsTagTheCaller()
+	{
+		Lg.v("message"); assertCallerTag();
+		Lg.v("message", "part"); assertCallerTag();
+		Lg.v("message", 1L); assertCallerTag();
+		Lg.v("message", 1.0f); assertCallerTag();
+		Lg.v("message", 1.0); assertCallerTag();
+		Lg.v("message", true); assertCallerTag();
+		Lg.v(() -> new Object[] { "message" }); assertCallerTag();
+		Lg.v("message", "part", "part"); assertCallerTag();
+	}
+
+	@Test
+	public void debugOverloadsTagTheCaller()
+	{
+		Lg.d("message"); assertCallerTag();
+		Lg.d("message", "part"); assertCallerTag();
+		Lg.d("message", 1L); assertCallerTag();
+		Lg.d("message", 1.0f); assertCallerTag();
+		Lg.d("message", 1.0); assertCallerTag();
+		Lg.d("message", true); assertCallerTag();
+		Lg.d(() -> new Object[] { "message" }); assertCallerTag();
+		Lg.d("message", "part", "part"); assertCallerTag();
+	}
+
+	@Test
+	public void infoOverloadsTagTheCaller()
+	{
+		Lg.i("message"); assertCallerTag();
+		Lg.i("message", "part"); assertCallerTag();
+		Lg.i("message", 1L); assertCallerTag();
+		Lg.i("message", 1.0f); assertCallerTag();
+		Lg.i("message", 1.0); assertCallerTag();
+		Lg.i("message", true); assertCallerTag();
+		Lg.i(() -> new Object[] { "message" }); assertCallerTag();
+		Lg.i("message", "part", "part"); assertCallerTag();
+	}
+
+	@Test
+	public void warningAndErrorOverloadsTagTheCaller()
+	{
+		Lg.w("message"); assertCallerTag();
+		Lg.w("message", "part", "part"); assertCallerTag();
+		Lg.e("message"); assertCallerTag();
+		Lg.e("message", "part", "part"); assertCallerTag();
+		Lg.ex(new IllegalStateException("test"), "message"); assertCallerTag();
+	}
+
+	@Test
+	public void disabledCallerTaggingUsesTheDefaultTag()
+	{
+		Lg.setCallerTagging(false);
+		Lg.i("message");
+		Lg.w("message");
+		Lg.setCallerTagging(true);
+
+		assertEquals(2, mTags.size());
+		assertEquals(TAG_SIZE, mTags.get(0).length());
+		assertTrue(mTags.get(0).startsWith("(simlar)."));
+		assertEquals(mTags.get(0), mTags.get(1));
+	}
+
+	@Test
+	public void disabledLevelDoesNotEvaluateMessageParts()
+	{
+		Lg.setDebugMode(false);
+		final AtomicBoolean evaluated = new AtomicBoolean(false);
+		Lg.d(() -> {
+			evaluated.set(true);
+			return new Object[] { "message" };
+		});
+
+		assertFalse(evaluated.get());
+		assertTrue(mTags.isEmpty());
+	}
+
+	private static long getAllocatedBytes(final com.sun.management.ThreadMXBean threadMXBean)
+	{
+		return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// neither a varargs array nor a boxed primitive
+	@Test
+	public void disabledLevelDoesNotAllocate()
+	{
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue("measuring allocations is supported", bean instanceof com.sun.management.ThreadMXBean &&
+				((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+		final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		Lg.setDebugMode(false);
+
+		final long before = getAllocatedBytes(threadMXBean);
+		for (int i = 0; i < ALLOCATION_TEST_CALLS; ++i) {
+			final long value = 1_000_000L + i;
+			Lg.v("message", value);
+			Lg.d("message", (double) value);
+			Lg.i("message", "part");
+			Lg.i("message", value % 2 == 0);
+		}
+		final long allocated = getAllocatedBytes(threadMXBean) - before;
+
+		assertTrue("allocated " + allocated + " bytes", allocated < ALLOCATION_TEST_MAX_BYTES);
+		assertTrue(mTags.isEmpty());
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class TracerTest
+{
+	private static final int CAPACITY = 512;
+
+	private static List<String> exportSummary() throws IOException
+	{
+		final StringWriter writer = new StringWriter();
+		Tracer.exportSummary(writer);
+		final List<String> lines = new ArrayList<>();
+		for (final String line : writer.toString().split("\n")) {
+			if (!line.isEmpty()) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	private static String getSpanName(final String line)
+	{
+		return line.startsWith("+") ? line.split(" ")[1] : null;
+	}
+
+	@Test
+	public void fullBufferOverwritesTheOldestSpans() throws IOException
+	{
+		final int[] spans = new int[CAPACITY + 100];
+		for (int i = 0; i < spans.length; ++i) {
+			spans[i] = Tracer.begin("ring" + i);
+		}
+		Tracer.end(spans[0]);
+		Tracer.end(spans[spans.length - 1]);
+
+		final List<String> lines = exportSummary();
+		final List<String> names = new ArrayList<>();
+		for (final String line : lines) {
+			names.add(getSpanName(line));
+		}
+
+		assertEquals(CAPACITY, names.indexOf(null));
+		for (int i = 0; i < CAPACITY; ++i) {
+			assertEquals("ring" + (i + 100), names.get(i));
+		}
+		assertTrue(lines.get(CAPACITY - 1).contains("ms"));
+		assertTrue(lines.get(CAPACITY - 2).contains("unfinished"));
+		assertTrue(lines.get(CAPACITY).startsWith("overwritten spans: "));
+	}
+
+	@Test
+	public void endingAnOverwrittenSpanDoesNotEndItsSuccessor() throws IOException
+	{
+		final int span = Tracer.begin("overwritten");
+		for (int i = 0; i < CAPACITY; ++i) {
+			Tracer.begin("successor" + i);
+		}
+		Tracer.end(span);
+
+		for (final String line : exportSummary()) {
+			final String name = getSpanName(line);
+			assertFalse("overwritten".equals(name));
+			if (name != null) {
+				assertTrue(line.contains("unfinished"));
+			}
+		}
+	}
+
+	@Test
+	public void onceSpansAreRecordedOnlyOnce() throws IOException
+	{
+		Tracer.beginOnce("once");
+		Tracer.beginOnce("once");
+		Tracer.endOnce("once");
+		Tracer.beginOnce("once");
+		Tracer.endOnce("once");
+
+		int count = 0;
+		for (final String line : exportSummary()) {
+			if ("once".equals(getSpanName(line))) {
+				assertFalse(line.contains("unfinished"));
+				++count;
+			}
+		}
+		assertEquals(1, count);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.simlar.helper.NetworkType;
+
+public final class CallMediaPolicyTest
+{
+	private static final long TICK = 1000;
+
+	@Test
+	public void cleanMobileCallStaysUnlimited()
+	{
+		final CallMediaPolicy policy = new CallMediaPolicy();
+		for (long time = 0; time < 60000; time += TICK) {
+			assertNull(policy.evaluate(time, NetworkType.MOBILE, 5, 120));
+		}
+		assertEquals(CallMediaPolicy.Level.UNLIMITED, policy.getLevel());
+	}
+
+	@Test
+	public void mobileDegradesAtLowerLoss()
+	{
+		assertEquals(CallMediaPolicy.Level.UNLIMITED, CallMediaPolicy.classify(NetworkType.WIFI, 15, 100));
+		assertEquals(CallMediaPolicy.Level.CONSTRAINED, CallMediaPolicy.classify(NetworkType.MOBILE, 15, 100));
+		assertEquals(CallMediaPolicy.Level.AUDIO_FIRST, CallMediaPolicy.classify(NetworkType.WIFI, 0, 900));
+	}
+
+	@Test
+	public void degradesAfterDelayAndRenegotiatesOnce()
+	{
+		final CallMediaPolicy policy = new CallMediaPolicy();
+		assertNull(policy.evaluate(0, NetworkType.WIFI, 60, 100));
+		assertNull(policy.evaluate(1000, NetworkType.WIFI, 60, 100));
+		assertEquals(CallMediaPolicy.Level.CONGESTED, policy.evaluate(2000, NetworkType.WIFI, 60, 100));
+		assertTrue(policy.shouldRenegotiate());
+
+		// a further degradation shortly afterwards is only applied locally
+		assertNull(policy.evaluate(3000, NetworkType.WIFI, 120, 100));
+		assertEquals(CallMediaPolicy.Level.AUDIO_FIRST, policy.evaluate(5000, NetworkType.WIFI, 120, 100));
+		assertFalse(policy.shouldRenegotiate());
+	}
+
+	@Test
+	public void recoversSlowlyWithoutRenegotiation()
+	{
+		final CallMediaPolicy policy = new CallMediaPolicy();
+		policy.evaluate(0, NetworkType.WIFI, 60, 100);
+		assertEquals(CallMediaPolicy.Level.CONGESTED, policy.evaluate(2000, NetworkType.WIFI, 60, 100));
+
+		// a short improvement does not count
+		assertNull(policy.evaluate(3000, NetworkType.WIFI, 0, 100));
+		assertNull(policy.evaluate(4000, NetworkType.WIFI, 60, 100));
+
+		long time = 5000;
+		for (; time < 15000; time += TICK) {
+			assertNull(policy.evaluate(time, NetworkType.WIFI, 0, 100));
+		}
+		assertEquals(CallMediaPolicy.Level.UNLIMITED, policy.evaluate(time, NetworkType.WIFI, 0, 100));
+		assertFalse(policy.shouldRenegotiate());
+	}
+
+	@Test
+	public void renegotiatesAgainAfterInterval()
+	{
+		final CallMediaPolicy policy = new CallMediaPolicy();
+		policy.evaluate(0, NetworkType.WIFI, 30, 100);
+		assertEquals(CallMediaPolicy.Level.CONSTRAINED, policy.evaluate(2000, NetworkType.WIFI, 30, 100));
+		assertTrue(policy.shouldRenegotiate());
+
+		policy.evaluate(40000, NetworkType.WIFI, 60, 100);
+		assertEquals(CallMediaPolicy.Level.CONGESTED, policy.evaluate(42000, NetworkType.WIFI, 60, 100));
+		assertTrue(policy.shouldRenegotiate());
+
+		policy.reset();
+		assertEquals(CallMediaPolicy.Level.UNLIMITED, policy.getLevel());
+		assertFalse(policy.shouldRenegotiate());
+	}
+}
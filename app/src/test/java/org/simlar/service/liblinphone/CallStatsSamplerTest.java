@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.linphone.core.IceState;
+import org.linphone.core.StreamType;
+
+public final class CallStatsSamplerTest
+{
+	private static final class Tick
+	{
+		final long time;
+		final IceState iceState;
+		final float quality;
+		final boolean reported;
+
+		Tick(final long time, final IceState iceState, final float quality, final boolean reported)
+		{
+			this.time = time;
+			this.iceState = iceState;
+			this.quality = quality;
+			this.reported = reported;
+		}
+	}
+
+	// audio ticks of a call recorded once per second: ice negotiation, a good connection, a short degradation and its recovery
+	private static final Tick[] CALL = {
+			new Tick(0, null, 0.0f, true),
+			new Tick(1000, IceState.InProgress, 4.0f, true),
+			new Tick(2000, IceState.InProgress, 4.2f, true),
+			new Tick(3000, IceState.HostConnection, 4.5f, false),
+			new Tick(4000, IceState.HostConnection, 4.5f, false),
+			new Tick(11000, IceState.HostConnection, 4.4f, false),
+			new Tick(12000, IceState.HostConnection, 4.4f, true),
+			new Tick(13000, IceState.HostConnection, 4.3f, false),
+			new Tick(14000, IceState.HostConnection, 2.9f, true),
+			new Tick(15000, IceState.HostConnection, 2.1f, true),
+			new Tick(16000, IceState.HostConnection, 3.0f, false),
+			new Tick(17000, IceState.HostConnection, 3.8f, false),
+			new Tick(24000, IceState.HostConnection, 4.1f, false),
+			new Tick(25000, IceState.HostConnection, 4.1f, true),
+			new Tick(35000, IceState.HostConnection, 4.1f, true),
+	};
+
+	private static void replay(final CallStatsSampler sampler, final StreamType type, final Tick[] ticks)
+	{
+		for (final Tick tick : ticks) {
+			assertEquals("tick at " + tick.time + "ms", tick.reported, sampler.shouldReport(tick.time, type, tick.iceState, tick.quality));
+		}
+	}
+
+	@Test
+	public void recordedCall()
+	{
+		replay(new CallStatsSampler(), StreamType.Audio, CALL);
+	}
+
+	@Test
+	public void streamTypesAreSampledIndependently()
+	{
+		final CallStatsSampler sampler = new CallStatsSampler();
+		assertTrue(sampler.shouldReport(0, StreamType.Audio, IceState.HostConnection, 4.5f));
+		assertTrue(sampler.shouldReport(1000, StreamType.Video, IceState.HostConnection, 4.5f));
+		assertFalse(sampler.shouldReport(2000, StreamType.Audio, IceState.HostConnection, 4.5f));
+		assertFalse(sampler.shouldReport(2000, StreamType.Video, IceState.HostConnection, 4.5f));
+		assertTrue(sampler.shouldReport(10000, StreamType.Audio, IceState.HostConnection, 4.5f));
+		assertFalse(sampler.shouldReport(10000, StreamType.Video, IceState.HostConnection, 4.5f));
+	}
+
+	@Test
+	public void resetStartsTheNextCallWithAReport()
+	{
+		final CallStatsSampler sampler = new CallStatsSampler();
+		replay(sampler, StreamType.Audio, CALL);
+
+		sampler.reset();
+		assertTrue(sampler.shouldReport(36000, StreamType.Audio, IceState.HostConnection, 4.5f));
+		assertFalse(sampler.shouldReport(37000, StreamType.Audio, IceState.HostConnection, 4.5f));
+	}
+
+	@Test
+	public void slowInterval()
+	{
+		final CallStatsSampler sampler = new CallStatsSampler();
+		sampler.setSlowInterval(0);
+		for (int i = 0; i < 5; ++i) {
+			assertTrue(sampler.shouldReport(i * 1000L, StreamType.Audio, IceState.RelayConnection, 4.5f));
+		}
+
+		sampler.setSlowInterval(Long.MAX_VALUE / 4);
+		assertFalse(sampler.shouldReport(1_000_000_000L, StreamType.Audio, IceState.RelayConnection, 4.5f));
+		assertTrue(sampler.shouldReport(1_000_000_000L, StreamType.Audio, IceState.RelayConnection, 1.0f));
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.service.liblinphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.simlar.helper.NetworkQuality;
+
+public final class NetworkQualityEstimatorTest
+{
+	private static final long TICK = 1000;
+
+	// audio stats as reported by linphone once per second: quality, upload, download, jitter, packet loss, round trip delay
+	private static final float[][] GOOD = repeat(10, 4.5f, 300, 300, 10, 0, 80);
+	private static final float[][] FLUCTUATING = alternate(20, new float[] { 2.6f, 300, 300, 10, 0, 80 }, new float[] { 3.4f, 300, 300, 10, 0, 80 });
+	private static final float[][] DEGRADING = {
+			{ 4.0f, 300, 280, 20, 10, 90 },
+			{ 3.5f, 300, 240, 30, 30, 120 },
+			{ 3.0f, 300, 200, 40, 50, 160 },
+			{ 2.5f, 300, 160, 60, 70, 200 },
+			{ 2.0f, 300, 120, 80, 90, 250 },
+	};
+	private static final float[][] BAD = repeat(10, 1.0f, 300, 100, 80, 100, 250);
+
+	private static float[][] repeat(final int count, final float... sample)
+	{
+		final float[][] samples = new float[count][];
+		for (int i = 0; i < count; ++i) {
+			samples[i] = sample;
+		}
+		return samples;
+	}
+
+	private static float[][] alternate(final int count, final float[] first, final float[] second)
+	{
+		final float[][] samples = new float[count][];
+		for (int i = 0; i < count; ++i) {
+			samples[i] = i % 2 == 0 ? first : second;
+		}
+		return samples;
+	}
+
+	private static final class Replay
+	{
+		final NetworkQualityEstimator estimator = new NetworkQualityEstimator();
+		final List<NetworkQuality> qualities = new ArrayList<>();
+		final List<NetworkQuality> rawQualities = new ArrayList<>();
+		final List<Boolean> degradationsExpected = new ArrayList<>();
+		long time = 0;
+
+		Replay play(final float[][] samples)
+		{
+			qualities.clear();
+			rawQualities.clear();
+			degradationsExpected.clear();
+			for (final float[] sample : samples) {
+				estimator.update(time, sample[0], (int) sample[1], (int) sample[2], (int) sample[3], (int) sample[4], (int) sample[5]);
+				time += TICK;
+
+				qualities.add(estimator.getQuality());
+				rawQualities.add(NetworkQuality.fromFloat(estimator.getEstimate()));
+				degradationsExpected.add(estimator.isDegradationExpected());
+			}
+			return this;
+		}
+
+		NetworkQuality last()
+		{
+			return qualities.get(qualities.size() - 1);
+		}
+
+		static int countChanges(final List<NetworkQuality> qualities)
+		{
+			int changes = 0;
+			for (int i = 1; i < qualities.size(); ++i) {
+				if (qualities.get(i) != qualities.get(i - 1)) {
+					++changes;
+				}
+			}
+			return changes;
+		}
+	}
+
+	@Test
+	public void unknownWithoutSamples()
+	{
+		final NetworkQualityEstimator estimator = new NetworkQualityEstimator();
+		assertEquals(NetworkQuality.UNKNOWN, estimator.getQuality());
+		assertEquals(NetworkQuality.UNKNOWN, estimator.getPredictedQuality());
+		assertTrue(estimator.getEstimate() < 0);
+		assertFalse(estimator.hasSamples());
+		assertFalse(estimator.isDegradationExpected());
+	}
+
+	@Test
+	public void goodCall()
+	{
+		final Replay replay = new Replay().play(GOOD);
+		assertEquals(NetworkQuality.GOOD, replay.qualities.get(0));
+		assertEquals(0, Replay.countChanges(replay.qualities));
+		assertFalse(replay.degradationsExpected.contains(true));
+		assertTrue(replay.estimator.getConfidence() > 0.9f);
+	}
+
+	@Test
+	public void hysteresisSuppressesFlapping()
+	{
+		final Replay replay = new Replay().play(GOOD).play(FLUCTUATING);
+		assertTrue("the smoothed estimate has to cross the border for this test", Replay.countChanges(replay.rawQualities) > 0);
+		assertEquals(0, Replay.countChanges(replay.qualities));
+		assertEquals(NetworkQuality.GOOD, replay.last());
+	}
+
+	@Test
+	public void degradationIsPredictedBeforeItIsReported()
+	{
+		final Replay replay = new Replay().play(GOOD).play(DEGRADING);
+		final int firstExpected = replay.degradationsExpected.indexOf(true);
+		int firstReported = 0;
+		while (replay.qualities.get(firstReported) == NetworkQuality.GOOD) {
+			++firstReported;
+		}
+		assertTrue("no degradation predicted", firstExpected >= 0);
+		assertTrue("degradation predicted at " + firstExpected + " but reported at " + firstReported, firstExpected < firstReported);
+		assertTrue(replay.estimator.getPrediction() < replay.estimator.getEstimate());
+	}
+
+	@Test
+	public void badCallAndRecovery()
+	{
+		final Replay replay = new Replay().play(GOOD).play(DEGRADING).play(BAD);
+		assertEquals(NetworkQuality.VERY_POOR, replay.last());
+
+		replay.play(GOOD);
+		assertFalse(replay.degradationsExpected.contains(true));
+		replay.play(GOOD);
+		assertEquals(NetworkQuality.GOOD, replay.last());
+	}
+
+	@Test
+	public void streamMetricsAreUsedUntilLinphoneMeasuredTheQuality()
+	{
+		final Replay replay = new Replay().play(repeat(3, -1.0f, 300, 300, 10, 0, 80));
+		assertEquals(NetworkQuality.GOOD, replay.last());
+
+		final Replay bad = new Replay().play(repeat(3, -1.0f, 300, 100, 80, 100, 250));
+		assertTrue(bad.last().ordinal() > NetworkQuality.AVERAGE.ordinal());
+	}
+
+	@Test
+	public void resetForgetsTheCall()
+	{
+		final Replay replay = new Replay().play(GOOD).play(BAD);
+		replay.estimator.reset();
+		assertEquals(NetworkQuality.UNKNOWN, replay.estimator.getQuality());
+		assertFalse(replay.estimator.hasSamples());
+
+		replay.play(GOOD);
+		assertEquals(NetworkQuality.GOOD, replay.qualities.get(0));
+	}
+}
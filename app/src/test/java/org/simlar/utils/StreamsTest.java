@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) The Simlar Authors.
+ *
+ * This file is part of Simlar. (https://www.simlar.org)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+
+package org.simlar.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public final class StreamsTest
+{
+	private static byte[] createData(final int size)
+	{
+		final byte[] data = new byte[size];
+		for (int i = 0; i < size; ++i) {
+			data[i] = (byte) (i * 31 + 7);
+		}
+		return data;
+	}
+
+	private static File createFile(final byte[] data) throws IOException
+	{
+		final File file = File.createTempFile("streams", ".bin");
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private static void delete(final File file)
+	{
+		if (file != null && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	@Test
+	public void copy() throws IOException
+	{
+		final byte[] data = createData(3 * BufferPool.MEDIUM + 123);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		assertEquals(data.length, Streams.copy(new ByteArrayInputStream(data), os));
+		assertArrayEquals(data, os.toByteArray());
+	}
+
+	@Test
+	public void copyBoundedWithinLimit() throws IOException
+	{
+		final byte[] data = createData(BufferPool.MEDIUM + 1);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		assertEquals(data.length, Streams.copyBounded(new ByteArrayInputStream(data), os, data.length));
+		assertArrayEquals(data, os.toByteArray());
+	}
+
+	@Test
+	public void copyBoundedOverLimit()
+	{
+		final byte[] data = createData(2 * BufferPool.MEDIUM);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		assertThrows(IOException.class, () -> Streams.copyBounded(new ByteArrayInputStream(data), os, data.length - 1));
+
+		// nothing beyond the limit has been written
+		assertEquals(BufferPool.MEDIUM, os.size());
+	}
+
+	@Test
+	public void drainWithLimit() throws IOException
+	{
+		final byte[] data = createData(3 * BufferPool.SMALL);
+		final InputStream is = new ByteArrayInputStream(data);
+		assertEquals(BufferPool.SMALL + 10, Streams.drain(is, BufferPool.SMALL + 10));
+
+		// the rest is still readable
+		final byte[] rest = new byte[data.length];
+		final int length = is.read(rest);
+		assertEquals(data.length - BufferPool.SMALL - 10, length);
+		assertArrayEquals(Arrays.copyOfRange(data, BufferPool.SMALL + 10, data.length), Arrays.copyOf(rest, length));
+	}
+
+	@Test
+	public void drainShortStream() throws IOException
+	{
+		assertEquals(100, Streams.drain(new ByteArrayInputStream(createData(100)), 1000));
+		assertEquals(0, Streams.drain(new ByteArrayInputStream(createData(100)), 0));
+	}
+
+	@Test
+	public void copyFilesKeepsStreamPositions() throws IOException
+	{
+		final byte[] data = createData(5 * BufferPool.LARGE + 17);
+		final byte[] header = createData(99);
+		File source = null;
+		File target = null;
+		try {
+			source = createFile(data);
+			target = createFile(new byte[0]);
+
+			try (final FileInputStream is = new FileInputStream(source);
+				 final FileOutputStream os = new FileOutputStream(target)) {
+				os.write(header);
+				assertEquals(1000, is.skip(1000));
+
+				assertEquals(data.length - 1000, Streams.copy(is, os, BufferPool.MEDIUM));
+
+				// the source is at its end and the target continues after the copied bytes
+				assertEquals(-1, is.read());
+				os.write(header);
+			}
+
+			final byte[] expected = new byte[2 * header.length + data.length - 1000];
+			System.arraycopy(header, 0, expected, 0, header.length);
+			System.arraycopy(data, 1000, expected, header.length, data.length - 1000);
+			System.arraycopy(header, 0, expected, header.length + data.length - 1000, header.length);
+			assertArrayEquals(expected, Files.readAllBytes(target.toPath()));
+		} finally {
+			delete(source);
+			delete(target);
+		}
+	}
+}